@@ -0,0 +1,117 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Synthetic pkl sources for the benchmarks.
+ */
+final class Corpus {
+
+  private Corpus() {}
+
+  /**
+   * Writes modules that all import a shared base module and each write one JSON file.
+   */
+  static void evalModules(final Path directory, final int count) throws IOException {
+    Files.createDirectories(directory);
+    Files.writeString(
+        directory.resolve("base.pkl"),
+        """
+        module base
+
+        class Server {
+          host: String
+          port: Int(this > 0)
+        }
+
+        function servers(count: Int): Listing<Server> = new {
+          for (i in IntSeq(1, count)) {
+            new { host = "host-\\(i)"; port = 8000 + i }
+          }
+        }
+        """);
+    for (int i = 0; i < count; i++) {
+      Files.writeString(
+          directory.resolve("module" + i + ".pkl"),
+          """
+          import "base.pkl"
+
+          servers = base.servers(%d)
+
+          output {
+            files {
+              ["module%d.json"] {
+                value = servers
+                renderer = new JsonRenderer {}
+              }
+            }
+          }
+          """
+              .formatted(10 + i % 50, i));
+    }
+  }
+
+  /**
+   * Writes test modules with the given number of facts and examples each. The expected output of
+   * the examples is written by running them once with the overwrite goal.
+   */
+  static void testModules(final Path directory, final int count, final int tests)
+      throws IOException {
+    Files.createDirectories(directory);
+    for (int i = 0; i < count; i++) {
+      final var module = new StringBuilder();
+      module.append("amends \"pkl:test\"\n\nfacts {\n");
+      for (int test = 0; test < tests; test++) {
+        module
+            .append("  [\"fact ")
+            .append(test)
+            .append("\"] {\n    List(1, 2, 3).map((n) -> n * ")
+            .append(test)
+            .append(").fold(0, (a, b) -> a + b) == ")
+            .append(6 * test)
+            .append("\n  }\n");
+      }
+      module.append("}\n\nexamples {\n");
+      for (int test = 0; test < tests; test++) {
+        module
+            .append("  [\"example ")
+            .append(test)
+            .append("\"] {\n    new Mapping { [\"key\"] = \"value ")
+            .append(test)
+            .append("\" }\n  }\n");
+      }
+      module.append("}\n");
+      Files.writeString(directory.resolve("module" + i + "Test.pkl"), module);
+    }
+  }
+
+  /**
+   * Returns a module of the given number of lines, every tenth of which is not formatted.
+   */
+  static String module(final int lines) {
+    final var module = new StringBuilder("module generated\n\n");
+    for (int i = 0; i < lines; i++) {
+      if (i % 10 == 0) {
+        module.append("property").append(i).append("   =    ").append(i).append('\n');
+      } else {
+        module.append("property").append(i).append(" = ").append(i).append('\n');
+      }
+    }
+    return module.toString();
+  }
+
+  static void delete(final Path directory) throws IOException {
+    if (!Files.exists(directory)) {
+      return;
+    }
+    try (final Stream<Path> paths = Files.walk(directory)) {
+      for (final var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+}
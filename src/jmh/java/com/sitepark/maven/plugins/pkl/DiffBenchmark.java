@@ -0,0 +1,54 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Logs the differences between a large file and a version of it with every n-th line changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DiffBenchmark {
+
+  @Param({"10000", "100000"})
+  int lines;
+
+  @Param({"2", "100"})
+  int changedEvery;
+
+  private String original;
+  private String revised;
+
+  @Setup
+  public void createTexts() {
+    final var original = new StringBuilder();
+    final var revised = new StringBuilder();
+    for (int i = 0; i < this.lines; i++) {
+      original.append("property").append(i).append(" = ").append(i).append('\n');
+      revised.append("property").append(i).append(" = ");
+      revised.append(i % this.changedEvery == 0 ? -i : i).append('\n');
+    }
+    this.original = original.toString();
+    this.revised = revised.toString();
+  }
+
+  @Benchmark
+  public void diff() {
+    new FormatLogger(new SilentLog()).invalidFile(Path.of("file.pkl"), this.original, this.revised);
+  }
+}
@@ -0,0 +1,68 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluates a corpus of modules sharing a base module, each with a fresh evaluator per run, and
+ * writes their output files again every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EvalBenchmark {
+
+  @Param({"10", "100"})
+  int modules;
+
+  @Param({"1", "4"})
+  int parallelism;
+
+  private Path directory;
+
+  @Setup
+  public void createCorpus() throws IOException {
+    this.directory = Files.createTempDirectory("pkl-eval-benchmark");
+    Corpus.evalModules(this.directory.resolve("src"), this.modules);
+  }
+
+  @TearDown
+  public void deleteCorpus() throws IOException {
+    Corpus.delete(this.directory);
+  }
+
+  @Benchmark
+  public void eval() throws MojoExecutionException, MojoFailureException {
+    final var mojo = new EvalMojo();
+    mojo.directory = this.directory.resolve("src").toString();
+    mojo.files = "module*.pkl";
+    mojo.output = this.directory.resolve("output").toString();
+    // the output of the previous invocation is in place, and would be skipped otherwise
+    mojo.overwrite = true;
+    mojo.writeIfChanged = false;
+    mojo.incremental = false;
+    mojo.parallelism = this.parallelism;
+    mojo.color = false;
+    mojo.setLog(new SilentLog());
+    mojo.execute();
+  }
+}
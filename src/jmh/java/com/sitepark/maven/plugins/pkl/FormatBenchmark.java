@@ -0,0 +1,82 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pkl.formatter.Formatter;
+import org.pkl.formatter.GrammarVersion;
+
+/**
+ * Checks the format of a single small or very large file, which reads, formats and diffs it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FormatBenchmark {
+
+  @Param({"100", "50000"})
+  int lines;
+
+  private Path directory;
+  private Path unformatted;
+  private Path formatted;
+
+  @Setup
+  public void createFiles() throws IOException {
+    this.directory = Files.createTempDirectory("pkl-format-benchmark");
+    final var module = Corpus.module(this.lines);
+    this.unformatted = Files.writeString(this.directory.resolve("unformatted.pkl"), module);
+    this.formatted =
+        Files.writeString(
+            this.directory.resolve("formatted.pkl"),
+            new Formatter().format(module, GrammarVersion.latest()));
+  }
+
+  @TearDown
+  public void deleteFiles() throws IOException {
+    Corpus.delete(this.directory);
+  }
+
+  @Benchmark
+  public void checkFormatted() throws MojoExecutionException, MojoFailureException {
+    this.check(this.formatted);
+  }
+
+  @Benchmark
+  public void checkUnformatted() throws MojoExecutionException {
+    try {
+      this.check(this.unformatted);
+    } catch (final MojoFailureException exception) {
+      // expected, after the differences are logged
+    }
+  }
+
+  private void check(final Path file) throws MojoExecutionException, MojoFailureException {
+    final var mojo = new CheckFormatMojo();
+    mojo.paths = Set.of(file.toString());
+    mojo.grammarVersion = "latest";
+    mojo.parallelism = 1;
+    mojo.incremental = false;
+    mojo.setLog(new SilentLog());
+    mojo.execute();
+  }
+}
@@ -0,0 +1,65 @@
+package com.sitepark.maven.plugins.pkl;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Drops all messages, so the benchmarks measure producing them but not printing them.
+ */
+final class SilentLog implements Log {
+
+  @Override
+  public boolean isDebugEnabled() {
+    return true;
+  }
+
+  @Override
+  public void debug(final CharSequence content) {}
+
+  @Override
+  public void debug(final CharSequence content, final Throwable error) {}
+
+  @Override
+  public void debug(final Throwable error) {}
+
+  @Override
+  public boolean isInfoEnabled() {
+    return true;
+  }
+
+  @Override
+  public void info(final CharSequence content) {}
+
+  @Override
+  public void info(final CharSequence content, final Throwable error) {}
+
+  @Override
+  public void info(final Throwable error) {}
+
+  @Override
+  public boolean isWarnEnabled() {
+    return true;
+  }
+
+  @Override
+  public void warn(final CharSequence content) {}
+
+  @Override
+  public void warn(final CharSequence content, final Throwable error) {}
+
+  @Override
+  public void warn(final Throwable error) {}
+
+  @Override
+  public boolean isErrorEnabled() {
+    return true;
+  }
+
+  @Override
+  public void error(final CharSequence content) {}
+
+  @Override
+  public void error(final CharSequence content, final Throwable error) {}
+
+  @Override
+  public void error(final Throwable error) {}
+}
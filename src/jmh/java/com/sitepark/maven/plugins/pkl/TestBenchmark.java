@@ -0,0 +1,70 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs a suite of test modules with facts and examples, each with a fresh evaluator per run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TestBenchmark {
+
+  @Param({"10", "100"})
+  int modules;
+
+  @Param({"20"})
+  int tests;
+
+  @Param({"1", "4"})
+  int parallelism;
+
+  private Path directory;
+
+  @Setup
+  public void createCorpus() throws IOException, MojoExecutionException, MojoFailureException {
+    this.directory = Files.createTempDirectory("pkl-test-benchmark");
+    Corpus.testModules(this.directory, this.modules, this.tests);
+    // writes the expected output of the examples
+    this.configure(new OverwriteMojo()).execute();
+  }
+
+  @TearDown
+  public void deleteCorpus() throws IOException {
+    Corpus.delete(this.directory);
+  }
+
+  @Benchmark
+  public void test() throws MojoExecutionException, MojoFailureException {
+    this.configure(new TestMojo()).execute();
+  }
+
+  private TestMojo configure(final TestMojo mojo) {
+    mojo.directory = this.directory.toString();
+    mojo.files = "*Test.pkl";
+    mojo.parallelism = this.parallelism;
+    mojo.color = false;
+    mojo.setLog(new SilentLog());
+    return mojo;
+  }
+}
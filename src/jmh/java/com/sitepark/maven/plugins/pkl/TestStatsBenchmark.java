@@ -0,0 +1,58 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sums up the results of many test modules with many failures each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TestStatsBenchmark {
+
+  @Param({"100", "10000"})
+  int modules;
+
+  @Param({"0", "20"})
+  int failuresPerModule;
+
+  private List<TestStats> results;
+
+  @Setup
+  public void createResults() {
+    this.results = new ArrayList<>(this.modules);
+    for (int module = 0; module < this.modules; module++) {
+      final var stats =
+          TestStats.builder().setTestsRun(this.failuresPerModule + 1).setSecondsElapsed(0.1);
+      for (int failure = 0; failure < this.failuresPerModule; failure++) {
+        stats.addFailure(
+            new TestStats.Failure(
+                new TestStats.Scope("module" + module, "facts", "fact " + failure),
+                "1 == 2 │ false",
+                TestStats.Message.fromString("1 == 2\n│\nfalse")));
+      }
+      this.results.add(stats.build());
+    }
+  }
+
+  @Benchmark
+  public TestStats sum() {
+    return this.results.stream().collect(new TestStats.SummingCollector());
+  }
+}
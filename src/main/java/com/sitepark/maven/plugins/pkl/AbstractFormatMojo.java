@@ -1,10 +1,12 @@
 package com.sitepark.maven.plugins.pkl;
 
 import java.io.IOException;
-import java.nio.file.FileSystems;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -27,6 +29,20 @@ abstract class AbstractFormatMojo extends AbstractMojo {
   @Parameter(required = true)
   Set<String> paths;
 
+  /**
+   * Globbed paths, relative to each directory in ${paths}, of files and directories to leave out.
+   * Excluded directories are not searched. They add to the default excludes, see
+   * ${useDefaultExcludes}.
+   */
+  @Parameter List<String> excludes = List.of();
+
+  /**
+   * Whether to leave out {@code .git}, {@code node_modules} and {@code target} directories in
+   * addition to ${excludes}.
+   */
+  @Parameter(property = "pkl.useDefaultExcludes", defaultValue = "true")
+  boolean useDefaultExcludes = true;
+
   /**
    * The grammar compatibility version to use:
    * 1:      0.25 - 0.29
@@ -36,13 +52,71 @@ abstract class AbstractFormatMojo extends AbstractMojo {
   @Parameter(property = "pkl.format.grammarVersion", defaultValue = "latest")
   String grammarVersion;
 
+  /**
+   * The number of files to read, format and write concurrently, each worker using its own
+   * formatter. Values below one stand for the number of available processors.
+   */
+  @Parameter(property = "pkl.format.parallelism", defaultValue = "1")
+  int parallelism;
+
+  /**
+   * Whether to skip files that were formatted on a previous build and did not change since. The
+   * cache is discarded when the formatter or the grammar version changes.
+   */
+  @Parameter(property = "pkl.format.incremental", defaultValue = "true")
+  boolean incremental;
+
+  /**
+   * The file caching the content hashes of formatted files between incremental builds.
+   */
+  @Parameter(
+      defaultValue = "${project.build.directory}/pkl/${mojoExecution.executionId}.format-state")
+  String stateFile;
+
+  /**
+   * What to log about unformatted files:
+   * diff:  their differences to the formatted contents (default)
+   * files: only their paths, without computing any differences
+   */
+  @Parameter(property = "pkl.format.report", defaultValue = "diff")
+  String report = "diff";
+
+  /**
+   * The number of differences to log for each unformatted file. Values below zero stand for no
+   * limit.
+   */
+  @Parameter(property = "pkl.format.diffHunksPerFile", defaultValue = "100")
+  int diffHunksPerFile = 100;
+
+  /**
+   * The number of lines of differences to log for each unformatted file. Values below zero stand
+   * for no limit.
+   */
+  @Parameter(property = "pkl.format.diffLinesPerFile", defaultValue = "1000")
+  int diffLinesPerFile = 1000;
+
+  /**
+   * The number of differences to log for all unformatted files together. Values below zero stand
+   * for no limit.
+   */
+  @Parameter(property = "pkl.format.diffHunksPerBuild", defaultValue = "1000")
+  int diffHunksPerBuild = 1000;
+
+  /**
+   * The number of lines of differences to log for all unformatted files together. Values below
+   * zero stand for no limit.
+   */
+  @Parameter(property = "pkl.format.diffLinesPerBuild", defaultValue = "10000")
+  int diffLinesPerBuild = 10000;
+
   /**
    * Whether to skip execution.
    */
   @Parameter(property = "pkl.format.skip", defaultValue = "false")
   boolean skip;
 
-  private static final int MAX_DEPTH = 8;
+  // pkl modules and project files, at any depth
+  private static final List<String> INCLUDES = List.of("**.pkl", "PklProject", "**/PklProject");
 
   private static final class UncheckedMojoExecutionException extends RuntimeException {
     private final MojoExecutionException exception;
@@ -67,6 +141,34 @@ abstract class AbstractFormatMojo extends AbstractMojo {
     }
   }
 
+  // thrown by the consumer to leave the remaining files alone
+  private static final class Stopped extends RuntimeException {}
+
+  /**
+   * @param hash the content hash of the file, if it is known to be formatted
+   * @param contents the contents of an unformatted file, {@code null} for formatted ones
+   * @param upToDate whether the file was known to be formatted from a previous build
+   */
+  private static record Formatted(
+      FormattingResult result,
+      String hash,
+      String contents,
+      String formatted,
+      boolean upToDate) {
+
+    Formatted(final FormattingResult result, final String hash) {
+      this(result, hash, null, null, false);
+    }
+
+    Formatted(
+        final FormattingResult result,
+        final String hash,
+        final String contents,
+        final String formatted) {
+      this(result, hash, contents, formatted, false);
+    }
+  }
+
   protected AbstractFormatMojo() {
     this.logger = new FormatLogger(this.getLog());
   }
@@ -78,7 +180,6 @@ abstract class AbstractFormatMojo extends AbstractMojo {
     }
     this.logger.beginExecution();
 
-    final var formatter = new Formatter();
     final var grammarVersion =
         switch (this.grammarVersion) {
           case "1" -> GrammarVersion.V1;
@@ -88,18 +189,75 @@ abstract class AbstractFormatMojo extends AbstractMojo {
               throw new MojoFailureException(
                   "Invalid grammar version '" + v + "'. expected '1', '2' or 'latest'");
         };
-    final Map<Boolean, List<Path>> results;
+    final var diffs =
+        switch (this.report) {
+          case "diff" -> true;
+          case "files" -> false;
+          case final String r ->
+              throw new MojoFailureException(
+                  "Invalid report '" + r + "'. expected 'diff' or 'files'");
+        };
+    final List<Path> files;
     try {
-      results =
-          this.allFiles()
-              .map(file -> this.formatFile(file, formatter, grammarVersion))
-              .collect(
-                  Collectors.groupingBy(
-                      FormattingResult::success,
-                      Collectors.mapping(FormattingResult::file, Collectors.toList())));
+      // sorted, so the output doesn't depend on the order the workers finish in
+      files = this.allFiles().distinct().sorted().toList();
     } catch (final UncheckedMojoExecutionException exception) {
       throw exception.getChecked();
     }
+    final var incremental = this.incremental && this.stateFile != null;
+    final var fingerprint = incremental ? AbstractFormatMojo.fingerprint(grammarVersion) : "";
+    final var previousState =
+        incremental ? BuildState.load(Path.of(this.stateFile), fingerprint) : null;
+    final var state = incremental ? BuildState.empty(Path.of(this.stateFile), fingerprint) : null;
+    // shared by all files in order, so the limits cut off the same differences on every run
+    final var diffLogger =
+        new FormatLogger(
+            this.getLog(),
+            new FormatLogger.DiffLimits(
+                this.diffHunksPerFile,
+                this.diffLinesPerFile,
+                this.diffHunksPerBuild,
+                this.diffLinesPerBuild));
+    final List<FormattingResult> formattingResults = new ArrayList<>(files.size());
+    try (final var workers =
+        new WorkerPool<Formatter>(
+            this.parallelism, "pkl-format", Formatter::new, formatter -> {})) {
+      workers.forEachOrdered(
+          files,
+          (formatter, file) -> this.formatFile(file, formatter, grammarVersion, previousState),
+          formatted -> {
+            AbstractFormatMojo.report(diffLogger, formatted, diffs);
+            formattingResults.add(formatted.result());
+            if (incremental && formatted.hash() != null) {
+              state.put(
+                  AbstractFormatMojo.stateKey(formatted.result().file()),
+                  List.of(formatted.hash()));
+            }
+            if (this.stopsAfter(formatted.result())) {
+              throw new Stopped();
+            }
+          });
+    } catch (final Stopped stopped) {
+      this.logger.remainingFilesSkipped(files.size() - formattingResults.size());
+    }
+    if (incremental) {
+      // files left alone keep what is known about them
+      for (final var file : files.subList(formattingResults.size(), files.size())) {
+        final var key = AbstractFormatMojo.stateKey(file);
+        previousState.get(key).ifPresent(entry -> state.put(key, entry));
+      }
+      try {
+        state.store();
+      } catch (final IOException exception) {
+        throw new MojoExecutionException("Failed to write " + this.stateFile, exception);
+      }
+    }
+    final Map<Boolean, List<Path>> results =
+        formattingResults.stream()
+            .collect(
+                Collectors.groupingBy(
+                    FormattingResult::success,
+                    Collectors.mapping(FormattingResult::file, Collectors.toList())));
 
     if (results.containsKey(false)) {
       throw new MojoFailureException("There are formatting errors.");
@@ -113,8 +271,8 @@ abstract class AbstractFormatMojo extends AbstractMojo {
   }
 
   private Stream<Path> allFiles() {
-    final var pathMatcher =
-        FileSystems.getDefault().getPathMatcher("regex:^(.+\\.pkl|PklProject)$");
+    final var discovery =
+        new FileDiscovery(INCLUDES, FileDiscovery.excludes(this.excludes, this.useDefaultExcludes));
     return this.paths.stream()
         .map(e -> Paths.get(e))
         .flatMap(
@@ -125,9 +283,7 @@ abstract class AbstractFormatMojo extends AbstractMojo {
               }
               if (Files.isDirectory(file)) {
                 try {
-                  return Files.walk(file, MAX_DEPTH)
-                      .filter(Files::isRegularFile)
-                      .filter(pathMatcher::matches);
+                  return discovery.find(file).stream();
                 } catch (final IOException exception) {
                   throw new UncheckedMojoExecutionException(
                       new MojoExecutionException(
@@ -138,34 +294,96 @@ abstract class AbstractFormatMojo extends AbstractMojo {
             });
   }
 
-  private FormattingResult formatFile(
-      final Path file, final Formatter formatter, final GrammarVersion grammarVersion) {
+  /**
+   * Whether to leave the remaining files alone after the given result.
+   */
+  protected boolean stopsAfter(final FormattingResult result) {
+    return false;
+  }
+
+  private static void report(
+      final FormatLogger logger, final Formatted formatted, final boolean diffs) {
+    if (formatted.upToDate()) {
+      logger.upToDate(formatted.result().file());
+      return;
+    }
+    if (formatted.contents() == null) {
+      return;
+    }
+    final var file = formatted.result().file();
+    if (formatted.result().success() && diffs) {
+      logger.formattedFile(file, formatted.contents(), formatted.formatted());
+    } else if (formatted.result().success()) {
+      logger.formattedFile(file);
+    } else if (diffs) {
+      logger.invalidFile(file, formatted.contents(), formatted.formatted());
+    } else {
+      logger.invalidFile(file);
+    }
+  }
+
+  private static String fingerprint(final GrammarVersion grammarVersion) {
+    final var codeSource = Formatter.class.getProtectionDomain().getCodeSource();
+    return ContentHashes.of(
+        String.join(
+            "\n",
+            String.valueOf(Formatter.class.getPackage().getImplementationVersion()),
+            String.valueOf(codeSource != null ? codeSource.getLocation() : null),
+            grammarVersion.name()));
+  }
+
+  private static String stateKey(final Path file) {
+    return file.toAbsolutePath().normalize().toString();
+  }
+
+  private Formatted formatFile(
+      final Path file,
+      final Formatter formatter,
+      final GrammarVersion grammarVersion,
+      final BuildState previousState)
+      throws MojoExecutionException {
+    final byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(file);
+    } catch (final IOException exception) {
+      throw new MojoExecutionException("failed to read '" + file.toAbsolutePath() + "'", exception);
+    }
+    final var hash = ContentHashes.of(bytes);
+    if (previousState != null
+        && previousState
+            .get(AbstractFormatMojo.stateKey(file))
+            .filter(List.of(hash)::equals)
+            .isPresent()) {
+      // formatted on a previous build and not changed since
+      return new Formatted(FormattingResult.success(file), hash, null, null, true);
+    }
     final String contents;
     try {
-      contents = Files.readString(file);
+      contents = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes)).toString();
     } catch (final IOException exception) {
-      throw new UncheckedMojoExecutionException(
-          new MojoExecutionException("failed to read '" + file.toAbsolutePath() + "'", exception));
+      throw new MojoExecutionException("failed to read '" + file.toAbsolutePath() + "'", exception);
     }
     final String formatted;
     try {
       // can throw (atleast) a NoSuchFileException
       formatted = formatter.format(contents, grammarVersion);
     } catch (final Throwable exception) {
-      throw new UncheckedMojoExecutionException(
-          new MojoExecutionException(
-              "error during formatting '" + file.toAbsolutePath() + "'", exception));
+      throw new MojoExecutionException(
+          "error during formatting '" + file.toAbsolutePath() + "'", exception);
     }
     if (formatted.equals(contents)) {
-      return FormattingResult.success(file);
-    }
-    try {
-      return this.unformattedFile(file, contents, formatted);
-    } catch (final MojoExecutionException exception) {
-      throw new UncheckedMojoExecutionException(exception);
+      return new Formatted(FormattingResult.success(file), hash);
     }
+    final var result = this.unformattedFile(file, formatted);
+    // a file is only known to be formatted if it was rewritten with the formatted contents
+    return new Formatted(
+        result, result.success() ? ContentHashes.of(formatted) : null, contents, formatted);
   }
 
-  protected abstract FormattingResult unformattedFile(Path file, String contents, String formatted)
+  /**
+   * Handles a file whose contents differ from the formatted ones. The differences are logged as
+   * formatted if the result is a success and as errors otherwise.
+   */
+  protected abstract FormattingResult unformattedFile(Path file, String formatted)
       throws MojoExecutionException;
 }
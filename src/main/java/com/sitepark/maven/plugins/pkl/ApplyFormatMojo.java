@@ -17,8 +17,7 @@ public final class ApplyFormatMojo extends AbstractFormatMojo {
   }
 
   @Override
-  protected FormattingResult unformattedFile(
-      final Path file, final String contents, final String formatted)
+  protected FormattingResult unformattedFile(final Path file, final String formatted)
       throws MojoExecutionException {
     try {
       Files.write(
@@ -30,7 +29,6 @@ public final class ApplyFormatMojo extends AbstractFormatMojo {
       throw new MojoExecutionException(
           "failed to write to '" + file.toAbsolutePath() + "'", exception);
     }
-    this.logger.formattedFile(file, contents, formatted);
     return FormattingResult.success(file);
   }
 }
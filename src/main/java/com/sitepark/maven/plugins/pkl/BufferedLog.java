@@ -0,0 +1,144 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Collects log messages of a single unit of work so they can be written en bloc and don't
+ * interleave with messages of units running concurrently.
+ */
+final class BufferedLog implements Log {
+  private final Log target;
+  private final List<Entry> entries;
+
+  private enum Level {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR;
+  }
+
+  private static record Entry(
+      Level level,
+      /** nullable */
+      CharSequence content,
+      /** nullable */
+      Throwable error) {}
+
+  public BufferedLog(final Log target) {
+    this.target = target;
+    this.entries = new ArrayList<>();
+  }
+
+  public boolean isDebugEnabled() {
+    return this.target.isDebugEnabled();
+  }
+
+  public boolean isInfoEnabled() {
+    return this.target.isInfoEnabled();
+  }
+
+  public boolean isWarnEnabled() {
+    return this.target.isWarnEnabled();
+  }
+
+  public boolean isErrorEnabled() {
+    return this.target.isErrorEnabled();
+  }
+
+  public void debug(final CharSequence content) {
+    this.entries.add(new Entry(Level.DEBUG, content, null));
+  }
+
+  public void debug(final CharSequence content, final Throwable error) {
+    this.entries.add(new Entry(Level.DEBUG, content, error));
+  }
+
+  public void debug(final Throwable error) {
+    this.entries.add(new Entry(Level.DEBUG, null, error));
+  }
+
+  public void info(final CharSequence content) {
+    this.entries.add(new Entry(Level.INFO, content, null));
+  }
+
+  public void info(final CharSequence content, final Throwable error) {
+    this.entries.add(new Entry(Level.INFO, content, error));
+  }
+
+  public void info(final Throwable error) {
+    this.entries.add(new Entry(Level.INFO, null, error));
+  }
+
+  public void warn(final CharSequence content) {
+    this.entries.add(new Entry(Level.WARN, content, null));
+  }
+
+  public void warn(final CharSequence content, final Throwable error) {
+    this.entries.add(new Entry(Level.WARN, content, error));
+  }
+
+  public void warn(final Throwable error) {
+    this.entries.add(new Entry(Level.WARN, null, error));
+  }
+
+  public void error(final CharSequence content) {
+    this.entries.add(new Entry(Level.ERROR, content, null));
+  }
+
+  public void error(final CharSequence content, final Throwable error) {
+    this.entries.add(new Entry(Level.ERROR, content, error));
+  }
+
+  public void error(final Throwable error) {
+    this.entries.add(new Entry(Level.ERROR, null, error));
+  }
+
+  /**
+   * Writes all collected messages to the target log and forgets them.
+   */
+  public void flush() {
+    for (final var entry : this.entries) {
+      switch (entry.level()) {
+        case DEBUG -> {
+          if (entry.error() == null) {
+            this.target.debug(entry.content());
+          } else if (entry.content() == null) {
+            this.target.debug(entry.error());
+          } else {
+            this.target.debug(entry.content(), entry.error());
+          }
+        }
+        case INFO -> {
+          if (entry.error() == null) {
+            this.target.info(entry.content());
+          } else if (entry.content() == null) {
+            this.target.info(entry.error());
+          } else {
+            this.target.info(entry.content(), entry.error());
+          }
+        }
+        case WARN -> {
+          if (entry.error() == null) {
+            this.target.warn(entry.content());
+          } else if (entry.content() == null) {
+            this.target.warn(entry.error());
+          } else {
+            this.target.warn(entry.content(), entry.error());
+          }
+        }
+        case ERROR -> {
+          if (entry.error() == null) {
+            this.target.error(entry.content());
+          } else if (entry.content() == null) {
+            this.target.error(entry.error());
+          } else {
+            this.target.error(entry.content(), entry.error());
+          }
+        }
+      }
+    }
+    this.entries.clear();
+  }
+}
@@ -0,0 +1,77 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Entries persisted between builds to skip work that is up to date. All entries are discarded at
+ * once if the fingerprint of the configuration they were produced with changes.
+ */
+final class BuildState {
+  private final Path file;
+  private final String fingerprint;
+  private final Properties entries;
+
+  private static final String FINGERPRINT_KEY = "fingerprint";
+  private static final String COMMENT = "pkl-maven-plugin build state, do not edit";
+
+  private BuildState(final Path file, final String fingerprint, final Properties entries) {
+    this.file = file;
+    this.fingerprint = fingerprint;
+    this.entries = entries;
+  }
+
+  /**
+   * Creates a state without any entries, replacing the one in the file when stored.
+   */
+  public static BuildState empty(final Path file, final String fingerprint) {
+    return new BuildState(file, fingerprint, new Properties());
+  }
+
+  /**
+   * Reads the state from the file. A missing or unreadable file, as well as a state produced with
+   * a different fingerprint, results in an empty state.
+   */
+  public static BuildState load(final Path file, final String fingerprint) {
+    final var entries = new Properties();
+    if (Files.isRegularFile(file)) {
+      try (final InputStream stream = Files.newInputStream(file)) {
+        entries.load(stream);
+      } catch (final IOException | IllegalArgumentException exception) {
+        entries.clear();
+      }
+    }
+    if (!fingerprint.equals(entries.getProperty(FINGERPRINT_KEY))) {
+      entries.clear();
+    }
+    entries.remove(FINGERPRINT_KEY);
+    return new BuildState(file, fingerprint, entries);
+  }
+
+  public Optional<List<String>> get(final String key) {
+    return Optional.ofNullable(this.entries.getProperty(key)).map(value -> value.lines().toList());
+  }
+
+  public void put(final String key, final List<String> lines) {
+    this.entries.setProperty(key, String.join("\n", lines));
+  }
+
+  public void store() throws IOException {
+    final var parent = this.file.getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    final var properties = new Properties();
+    properties.putAll(this.entries);
+    properties.setProperty(FINGERPRINT_KEY, this.fingerprint);
+    try (final OutputStream stream = Files.newOutputStream(this.file)) {
+      properties.store(stream, COMMENT);
+    }
+  }
+}
@@ -3,18 +3,28 @@ package com.sitepark.maven.plugins.pkl;
 import java.nio.file.Path;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 
 @Mojo(name = "check-format", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true)
 public final class CheckFormatMojo extends AbstractFormatMojo {
 
+  /**
+   * Whether to stop at the first file that is not formatted instead of checking all files.
+   */
+  @Parameter(property = "pkl.format.failFast", defaultValue = "false")
+  boolean failFast;
+
   public CheckFormatMojo() {
     super();
   }
 
   @Override
-  protected FormattingResult unformattedFile(
-      final Path file, final String contents, final String formatted) {
-    this.logger.invalidFile(file, contents, formatted);
+  protected FormattingResult unformattedFile(final Path file, final String formatted) {
     return FormattingResult.failure(file);
   }
+
+  @Override
+  protected boolean stopsAfter(final FormattingResult result) {
+    return this.failFast && !result.success();
+  }
 }
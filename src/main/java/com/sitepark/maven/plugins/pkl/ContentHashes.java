@@ -0,0 +1,168 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Computes content hashes of modules and resources, remembering them for the lifetime of the
+ * instance.
+ *
+ * Files are hashed by their content, modulepath entries by the file or archive they resolve to.
+ * Everything else, like packages, remote modules or the standard library, is assumed to be
+ * immutable for a given URI and is hashed by its URI.
+ */
+final class ContentHashes {
+  private final List<Path> modulepath;
+  private final ConcurrentMap<URI, String> hashes;
+  private final ConcurrentMap<URI, String> listings;
+
+  /** The hash of files that do not exist or cannot be read. */
+  public static final String MISSING = "missing";
+
+  private static final String ALGORITHM = "SHA-256";
+  private static final int BUFFER_SIZE = 8192;
+
+  public ContentHashes(final Collection<Path> modulepath) {
+    this.modulepath = List.copyOf(modulepath);
+    this.hashes = new ConcurrentHashMap<>();
+    this.listings = new ConcurrentHashMap<>();
+  }
+
+  public String of(final URI uri) {
+    return this.hashes.computeIfAbsent(uri, this::compute);
+  }
+
+  /**
+   * Hashes the names of the elements within a listed directory, as far as they can be listed.
+   */
+  public String listing(final URI uri) {
+    return this.listings.computeIfAbsent(uri, this::computeListing);
+  }
+
+  public static String of(final Path file) {
+    try (final InputStream stream = Files.newInputStream(file)) {
+      final var digest = ContentHashes.digest();
+      final var buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = stream.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (final IOException exception) {
+      return MISSING;
+    }
+  }
+
+  public static String of(final String value) {
+    return ContentHashes.of(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static String of(final byte[] bytes) {
+    return HexFormat.of().formatHex(ContentHashes.digest().digest(bytes));
+  }
+
+  /**
+   * Hashes the module or resource as it is now, without remembering the hash.
+   */
+  public String current(final URI uri) {
+    return this.compute(uri);
+  }
+
+  /**
+   * Hashes the listing as it is now, without remembering the hash.
+   */
+  public String currentListing(final URI uri) {
+    return this.computeListing(uri);
+  }
+
+  private String compute(final URI uri) {
+    return switch (uri.getScheme()) {
+      case "file" -> ContentHashes.of(Path.of(uri));
+      case "jar" -> this.archive(uri);
+      case "modulepath" -> this.modulepathEntry(uri);
+      case null, default -> ContentHashes.of(uri.toString());
+    };
+  }
+
+  private String computeListing(final URI uri) {
+    return switch (uri.getScheme()) {
+      case "file" -> ContentHashes.listing(Path.of(uri));
+      case "jar" -> this.archive(uri);
+      case "modulepath" -> this.modulepathListing(uri);
+      case null, default -> ContentHashes.of(uri.toString());
+    };
+  }
+
+  private static String listing(final Path directory) {
+    try (final var elements = Files.list(directory)) {
+      return ContentHashes.of(
+          elements
+              .map(element -> element.getFileName() + (Files.isDirectory(element) ? "/" : ""))
+              .sorted()
+              .collect(Collectors.joining("\n")));
+    } catch (final IOException exception) {
+      return MISSING;
+    }
+  }
+
+  private String modulepathListing(final URI uri) {
+    final var path = uri.getPath() != null ? uri.getPath().replaceFirst("^/+", "") : "";
+    final var listings = new StringBuilder();
+    for (final var root : this.modulepath) {
+      listings.append(
+          Files.isDirectory(root)
+              ? ContentHashes.listing(root.resolve(path))
+              : ContentHashes.of(root));
+    }
+    return ContentHashes.of(listings.toString());
+  }
+
+  private String archive(final URI uri) {
+    final var specific = uri.getSchemeSpecificPart();
+    final var separator = specific.indexOf("!/");
+    final var archive = separator < 0 ? specific : specific.substring(0, separator);
+    try {
+      return this.compute(new URI(archive));
+    } catch (final URISyntaxException exception) {
+      return ContentHashes.of(uri.toString());
+    }
+  }
+
+  private String modulepathEntry(final URI uri) {
+    final var path = uri.getPath() != null ? uri.getPath().replaceFirst("^/+", "") : "";
+    final var archives = new StringBuilder();
+    for (final var root : this.modulepath) {
+      if (Files.isDirectory(root)) {
+        final var file = root.resolve(path);
+        if (Files.isRegularFile(file)) {
+          return ContentHashes.of(file);
+        }
+      } else {
+        archives.append(ContentHashes.of(root));
+      }
+    }
+    // the entry is either missing or is contained in one of the archives
+    return archives.isEmpty() ? MISSING : ContentHashes.of(archives.toString());
+  }
+
+  private static MessageDigest digest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (final NoSuchAlgorithmException exception) {
+      throw new IllegalStateException(ALGORITHM + " is not supported", exception);
+    }
+  }
+}
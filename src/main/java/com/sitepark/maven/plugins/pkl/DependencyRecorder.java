@@ -0,0 +1,149 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import org.pkl.core.SecurityManager;
+import org.pkl.core.SecurityManagerException;
+import org.pkl.core.module.ModuleKey;
+import org.pkl.core.module.ModuleKeyFactory;
+import org.pkl.core.module.PathElement;
+import org.pkl.core.resource.ResourceReader;
+
+/**
+ * Records the URIs of all modules and resources resolved through the factories and readers it
+ * wraps, including resources that were missing, and the bases of all resolved globs.
+ *
+ * As an evaluator caches modules and resources, each is only read once per evaluator. The
+ * recorded URIs are therefore all modules and resources read by any evaluation of the evaluator so
+ * far, which is a superset of the ones read by the latest evaluation. Their content hashes are
+ * taken when they are first resolved, to tell whether the evaluator's cache has become outdated.
+ */
+final class DependencyRecorder {
+  private final ContentHashes hashes;
+  private final ConcurrentMap<URI, String> modules;
+  private final ConcurrentMap<URI, String> resources;
+  private final ConcurrentMap<URI, String> listings;
+
+  private final class RecordingModuleKeyFactory implements ModuleKeyFactory {
+    private final ModuleKeyFactory delegate;
+
+    RecordingModuleKeyFactory(final ModuleKeyFactory delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public Optional<ModuleKey> create(final URI uri) throws URISyntaxException {
+      final var key = this.delegate.create(uri);
+      if (key.isPresent()) {
+        DependencyRecorder.this.modules.computeIfAbsent(
+            uri, DependencyRecorder.this.hashes::current);
+      }
+      return key;
+    }
+  }
+
+  private final class RecordingResourceReader implements ResourceReader {
+    private final ResourceReader delegate;
+
+    RecordingResourceReader(final ResourceReader delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public String getUriScheme() {
+      return this.delegate.getUriScheme();
+    }
+
+    @Override
+    public boolean hasHierarchicalUris() {
+      return this.delegate.hasHierarchicalUris();
+    }
+
+    @Override
+    public boolean isGlobbable() {
+      return this.delegate.isGlobbable();
+    }
+
+    @Override
+    public Optional<Object> read(final URI uri)
+        throws IOException, URISyntaxException, SecurityManagerException {
+      // a missing resource is recorded too, as creating it changes the result of read?
+      DependencyRecorder.this.resources.computeIfAbsent(
+          uri, DependencyRecorder.this.hashes::current);
+      return this.delegate.read(uri);
+    }
+
+    @Override
+    public boolean hasElement(final SecurityManager securityManager, final URI elementUri)
+        throws IOException, SecurityManagerException {
+      DependencyRecorder.this.resources.computeIfAbsent(
+          elementUri, DependencyRecorder.this.hashes::current);
+      return this.delegate.hasElement(securityManager, elementUri);
+    }
+
+    @Override
+    public List<PathElement> listElements(final SecurityManager securityManager, final URI baseUri)
+        throws IOException, SecurityManagerException {
+      DependencyRecorder.this.listings.computeIfAbsent(
+          baseUri, DependencyRecorder.this.hashes::currentListing);
+      return this.delegate.listElements(securityManager, baseUri);
+    }
+  }
+
+  public DependencyRecorder(final Collection<Path> modulepath) {
+    this.hashes = new ContentHashes(modulepath);
+    this.modules = new ConcurrentHashMap<>();
+    this.resources = new ConcurrentHashMap<>();
+    this.listings = new ConcurrentHashMap<>();
+  }
+
+  public ModuleKeyFactory record(final ModuleKeyFactory factory) {
+    return new RecordingModuleKeyFactory(factory);
+  }
+
+  public ResourceReader record(final ResourceReader reader) {
+    return new RecordingResourceReader(reader);
+  }
+
+  public Set<URI> modules() {
+    return Set.copyOf(this.modules.keySet());
+  }
+
+  public Set<URI> resources() {
+    return Set.copyOf(this.resources.keySet());
+  }
+
+  /**
+   * Returns the URIs of the elements listed to resolve globs, whose elements matching them
+   * change when an element is created or deleted.
+   */
+  public Set<URI> listings() {
+    return Set.copyOf(this.listings.keySet());
+  }
+
+  /**
+   * Whether the content of any recorded module, resource or listing differs from when it was
+   * first resolved.
+   */
+  public boolean isChanged() {
+    return DependencyRecorder.isChanged(this.modules, this.hashes::current)
+        || DependencyRecorder.isChanged(this.resources, this.hashes::current)
+        || DependencyRecorder.isChanged(this.listings, this.hashes::currentListing);
+  }
+
+  private static boolean isChanged(
+      final Map<URI, String> recorded, final Function<URI, String> current) {
+    return recorded.entrySet().stream()
+        .anyMatch(entry -> !entry.getValue().equals(current.apply(entry.getKey())));
+  }
+}
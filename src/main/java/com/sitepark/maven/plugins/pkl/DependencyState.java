@@ -0,0 +1,108 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Describes everything the result of a module depends on as the lines of a {@link BuildState}
+ * entry, each consisting of a kind, a content hash and the URI or path hashed.
+ */
+final class DependencyState {
+  private final ContentHashes hashes;
+
+  /** A module in the transitive import closure, including the module itself. */
+  public static final String MODULE = "module ";
+
+  /** A resource read by the module, or missing when it tried to. */
+  public static final String RESOURCE = "resource ";
+
+  /** A directory listed to resolve a glob of the module. */
+  public static final String LISTING = "listing ";
+
+  /** A file read outside of the evaluator. */
+  public static final String FILE = "file ";
+
+  /** A file written for the module. */
+  public static final String OUTPUT = "output ";
+
+  public DependencyState(final ContentHashes hashes) {
+    this.hashes = hashes;
+  }
+
+  public List<String> modules(final ImportGraph graph, final Path module) {
+    return graph.closure(module.toAbsolutePath().normalize().toUri()).stream()
+        .map(uri -> MODULE + this.hashes.of(uri) + " " + uri)
+        .sorted()
+        .toList();
+  }
+
+  public List<String> resources(final Collection<URI> resources) {
+    return resources.stream()
+        .map(uri -> RESOURCE + this.hashes.of(uri) + " " + uri)
+        .sorted()
+        .toList();
+  }
+
+  public List<String> listings(final Collection<URI> listings) {
+    return listings.stream()
+        .map(uri -> LISTING + this.hashes.listing(uri) + " " + uri)
+        .sorted()
+        .toList();
+  }
+
+  public List<String> files(final String kind, final Collection<Path> files) {
+    return files.stream().map(file -> kind + ContentHashes.of(file) + " " + file).toList();
+  }
+
+  /**
+   * Whether the entry describes the given modules and all its resources and files are unchanged.
+   */
+  public boolean isUpToDate(final List<String> entry, final List<String> modules) {
+    final var previousModules = entry.stream().filter(line -> line.startsWith(MODULE)).toList();
+    if (!previousModules.equals(modules)) {
+      return false;
+    }
+    for (final var line : entry) {
+      final var hashStart = line.indexOf(' ') + 1;
+      final var separator = line.indexOf(' ', hashStart);
+      if (hashStart == 0 || separator < 0) {
+        return false;
+      }
+      final var hash = line.substring(hashStart, separator);
+      final var target = line.substring(separator + 1);
+      final var current =
+          switch (line.substring(0, hashStart)) {
+            case RESOURCE -> this.hashes.of(URI.create(target));
+            case LISTING -> this.hashes.listing(URI.create(target));
+            case FILE, OUTPUT -> ContentHashes.of(Path.of(target));
+            default -> hash;
+          };
+      if (!hash.equals(current)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the URIs of all lines of the given kind.
+   */
+  public static List<URI> uris(final List<String> entry, final String kind) {
+    return entry.stream()
+        .filter(line -> line.startsWith(kind))
+        .map(line -> URI.create(line.substring(line.indexOf(' ', kind.length()) + 1)))
+        .toList();
+  }
+
+  /**
+   * Returns the paths of all lines of the given kind.
+   */
+  public static List<Path> paths(final List<String> entry, final String kind) {
+    return entry.stream()
+        .filter(line -> line.startsWith(kind))
+        .map(line -> Path.of(line.substring(line.indexOf(' ', kind.length()) + 1)))
+        .toList();
+  }
+}
@@ -2,13 +2,17 @@ package com.sitepark.maven.plugins.pkl;
 
 import java.nio.file.Path;
 import java.text.DecimalFormat;
+import java.util.List;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.shared.utils.logging.MessageUtils;
 
 final class EvalLogger {
   private final Log log;
 
+  private static final String INDENT = "  ";
   private static final DecimalFormat SECONDS_FORMAT = new DecimalFormat("#.###");
+  private static final DecimalFormat SIZE_FORMAT = new DecimalFormat("#.#");
+  private static final String[] SIZE_UNITS = {"B", "kB", "MB", "GB", "TB"};
 
   public EvalLogger(final Log log) {
     this.log = log;
@@ -20,32 +24,123 @@ final class EvalLogger {
 
   public void beginExecution() {}
 
-  public void evalFile(final Path file) {
-    this.log.debug("Evaluating " + file);
+  public void evalFile(final Path file, final String variant) {
+    this.log.debug("Evaluating " + file + EvalLogger.variant(variant));
+  }
+
+  public void moduleUpToDate(final Path file, final String variant) {
+    this.log.debug("Skipping up-to-date " + file + EvalLogger.variant(variant));
   }
 
   public void writeFile(final Path file) {
     this.log.info("Writing " + file);
   }
 
+  public void archiveFile(final String entry) {
+    this.log.debug("Archiving " + entry);
+  }
+
+  public void writeArchive(final Path file, final int entries) {
+    this.log.info("Writing " + file + " with " + entries + (entries == 1 ? " file" : " files"));
+  }
+
   public void writeFileSkipped(final Path file) {
     this.log.info("Skip writing existing " + file);
   }
 
+  public void writeFileUnchanged(final Path file) {
+    this.log.info("Skip writing unchanged " + file);
+  }
+
   public void noFilesWritten(final Path file) {
     this.log.warn(MessageUtils.buffer().warning("No output files defined in " + file).build());
   }
 
-  public void summary(final EvalStats evalStats) {
+  public void slowestModules(final List<EvalMetrics.Module> modules) {
+    if (modules.isEmpty()) {
+      return;
+    }
+    this.log.info("Slowest modules:");
+    for (final var module : modules) {
+      final var message =
+          new StringBuilder(INDENT)
+              .append(module.key())
+              .append(" took ")
+              .append(SECONDS_FORMAT.format(module.timing().seconds()))
+              .append('s');
+      if (module.timing().cpuSeconds().isPresent()) {
+        message
+            .append(" (CPU ")
+            .append(SECONDS_FORMAT.format(module.timing().cpuSeconds().getAsDouble()))
+            .append("s)");
+      }
+      if (module.allocatedBytes().isPresent()) {
+        message
+            .append(", allocated ")
+            .append(EvalLogger.size(module.allocatedBytes().getAsLong()));
+      }
+      message
+          .append(", wrote ")
+          .append(module.outputFiles())
+          .append(module.outputFiles() == 1 ? " file of " : " files of ")
+          .append(EvalLogger.size(module.outputBytes()));
+      this.log.info(message);
+    }
+  }
+
+  public void variantSummary(final String variant, final EvalStats evalStats) {
+    final var message =
+        new StringBuilder("Variant ")
+            .append(variant)
+            .append(": Files evaluated: ")
+            .append(evalStats.filesEvaluated())
+            .append(", Files created: ")
+            .append(evalStats.filesCreated());
+    if (evalStats.filesUnchanged() > 0) {
+      message.append(", Files unchanged: ").append(evalStats.filesUnchanged());
+    }
+    if (evalStats.modulesUpToDate() > 0) {
+      message.append(", Modules up to date: ").append(evalStats.modulesUpToDate());
+    }
     this.log.info(
+        message
+            .append(", Summed module time: ")
+            .append(SECONDS_FORMAT.format(evalStats.secondsElapsed()))
+            .append('s'));
+  }
+
+  public void summary(final EvalStats evalStats) {
+    final var message =
         MessageUtils.buffer()
             .success("Files evaluated: " + evalStats.filesEvaluated())
             .a(", ")
-            .success("Files created: " + evalStats.filesCreated())
+            .success("Files created: " + evalStats.filesCreated());
+    if (evalStats.filesUnchanged() > 0) {
+      message.a(", Files unchanged: " + evalStats.filesUnchanged());
+    }
+    if (evalStats.modulesUpToDate() > 0) {
+      message.a(", Modules up to date: " + evalStats.modulesUpToDate());
+    }
+    this.log.info(
+        message
             .a(", Time elapsed: ")
             .a(SECONDS_FORMAT.format(evalStats.secondsElapsed()))
             .a("s")
             .build());
     this.log.info("");
   }
+
+  private static String variant(final String variant) {
+    return variant.isEmpty() ? "" : " for " + variant;
+  }
+
+  private static String size(final long bytes) {
+    double size = bytes;
+    int unit = 0;
+    while (size >= 1000 && unit < SIZE_UNITS.length - 1) {
+      size /= 1000;
+      unit++;
+    }
+    return SIZE_FORMAT.format(size) + " " + SIZE_UNITS[unit];
+  }
 }
@@ -0,0 +1,149 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+
+/**
+ * The metrics of each module evaluated, to find the few modules taking most of the time. They are
+ * written as JSON if the file name ends with {@code .json} and as CSV otherwise.
+ */
+final class EvalMetrics {
+  private final List<Module> modules;
+
+  private static final String CSV_HEADER =
+      "module,seconds,cpuSeconds,allocatedBytes,outputFiles,outputBytes";
+
+  /**
+   * @param key the path of the module relative to the directory it was found in
+   * @param allocatedBytes the bytes allocated by the thread evaluating the module, if the JVM
+   *     measures them
+   * @param outputBytes the size of all output files, written or not
+   */
+  public static record Module(
+      String key,
+      Timings.Timing timing,
+      OptionalLong allocatedBytes,
+      int outputFiles,
+      long outputBytes) {}
+
+  public EvalMetrics() {
+    this.modules = new ArrayList<>();
+  }
+
+  public void add(final Module module) {
+    this.modules.add(module);
+  }
+
+  /**
+   * Returns up to the given number of modules that took the longest, the longest first.
+   */
+  public List<Module> slowest(final int count) {
+    return this.modules.stream()
+        .sorted(Comparator.comparingDouble((final Module m) -> m.timing().seconds()).reversed())
+        .limit(Math.max(count, 0))
+        .toList();
+  }
+
+  /**
+   * Writes the metrics of all modules, in the order they were added.
+   */
+  public void store(final Path file) throws IOException {
+    final var parent = file.getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    try (final Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      if (file.getFileName().toString().endsWith(".json")) {
+        this.writeJson(writer);
+      } else {
+        this.writeCsv(writer);
+      }
+    }
+  }
+
+  private void writeCsv(final Writer writer) throws IOException {
+    writer.write(CSV_HEADER);
+    writer.write('\n');
+    for (final var module : this.modules) {
+      writer.write(EvalMetrics.csvField(module.key()));
+      writer.write(',');
+      writer.write(String.valueOf(module.timing().seconds()));
+      writer.write(',');
+      writer.write(EvalMetrics.value(module.timing().cpuSeconds(), ""));
+      writer.write(',');
+      writer.write(EvalMetrics.value(module.allocatedBytes(), ""));
+      writer.write(',');
+      writer.write(String.valueOf(module.outputFiles()));
+      writer.write(',');
+      writer.write(String.valueOf(module.outputBytes()));
+      writer.write('\n');
+    }
+  }
+
+  private void writeJson(final Writer writer) throws IOException {
+    writer.write("[");
+    for (int i = 0; i < this.modules.size(); i++) {
+      final var module = this.modules.get(i);
+      writer.write(i == 0 ? "\n" : ",\n");
+      writer.write("  {\"module\": ");
+      writer.write(EvalMetrics.jsonString(module.key()));
+      writer.write(", \"seconds\": ");
+      writer.write(String.valueOf(module.timing().seconds()));
+      writer.write(", \"cpuSeconds\": ");
+      writer.write(EvalMetrics.value(module.timing().cpuSeconds(), "null"));
+      writer.write(", \"allocatedBytes\": ");
+      writer.write(EvalMetrics.value(module.allocatedBytes(), "null"));
+      writer.write(", \"outputFiles\": ");
+      writer.write(String.valueOf(module.outputFiles()));
+      writer.write(", \"outputBytes\": ");
+      writer.write(String.valueOf(module.outputBytes()));
+      writer.write("}");
+    }
+    writer.write(this.modules.isEmpty() ? "]\n" : "\n]\n");
+  }
+
+  private static String value(final OptionalDouble value, final String missing) {
+    return value.isPresent() ? String.valueOf(value.getAsDouble()) : missing;
+  }
+
+  private static String value(final OptionalLong value, final String missing) {
+    return value.isPresent() ? String.valueOf(value.getAsLong()) : missing;
+  }
+
+  private static String csvField(final String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  private static String jsonString(final String value) {
+    final var json = new StringBuilder(value.length() + 2).append('"');
+    for (int i = 0; i < value.length(); i++) {
+      final var c = value.charAt(i);
+      switch (c) {
+        case '"' -> json.append("\\\"");
+        case '\\' -> json.append("\\\\");
+        case '\n' -> json.append("\\n");
+        case '\r' -> json.append("\\r");
+        case '\t' -> json.append("\\t");
+        default -> {
+          if (c < 0x20) {
+            json.append(String.format("\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+        }
+      }
+    }
+    return json.append('"').toString();
+  }
+}
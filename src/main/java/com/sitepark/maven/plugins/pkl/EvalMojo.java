@@ -1,14 +1,28 @@
 package com.sitepark.maven.plugins.pkl;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystems;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -19,13 +33,8 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.pkl.core.Evaluator;
-import org.pkl.core.EvaluatorBuilder;
 import org.pkl.core.ModuleSource;
-import org.pkl.core.SecurityManagers;
-import org.pkl.core.StackFrameTransformers;
-import org.pkl.core.module.ModuleKeyFactories;
-import org.pkl.core.module.ModulePathResolver;
-import org.pkl.core.resource.ResourceReaders;
+import org.pkl.core.Release;
 
 @Mojo(
     name = "eval",
@@ -40,6 +49,19 @@ public final class EvalMojo extends AbstractMojo {
   @Parameter(required = true)
   String files;
 
+  /**
+   * Globbed paths, relative to ${pkl.directory}, of files and directories to leave out. Excluded
+   * directories are not searched. They add to the default excludes, see ${useDefaultExcludes}.
+   */
+  @Parameter List<String> excludes = List.of();
+
+  /**
+   * Whether to leave out {@code .git}, {@code node_modules} and {@code target} directories in
+   * addition to ${excludes}.
+   */
+  @Parameter(property = "pkl.useDefaultExcludes", defaultValue = "true")
+  boolean useDefaultExcludes = true;
+
   /**
    * The base directory to search pkl files in via ${pkl.files}.
    */
@@ -47,10 +69,45 @@ public final class EvalMojo extends AbstractMojo {
   String directory;
 
   /**
-   * The directory where the resulting files are generated to.
+   * The directory where the resulting files are generated to. Required unless
+   * ${pkl.outputArchive} is set.
    */
-  @Parameter(required = true)
-  String output;
+  @Parameter String output;
+
+  /**
+   * A zip or jar file to write all resulting files to instead of ${pkl.output}, without writing
+   * them to disk one by one. All modules are evaluated, as the archive is written as a whole.
+   */
+  @Parameter(property = "pkl.outputArchive")
+  String outputArchive;
+
+  /**
+   * The compression level of ${pkl.outputArchive}, from 0 (none) to 9 (best).
+   */
+  @Parameter(property = "pkl.outputArchiveLevel", defaultValue = "6")
+  int outputArchiveLevel = 6;
+
+  /**
+   * The modification time of all entries of ${pkl.outputArchive}, either an ISO 8601 date-time or
+   * the seconds since the epoch. Defaults to 1980-01-01T00:00:00Z if not set.
+   */
+  @Parameter(defaultValue = "${project.build.outputTimestamp}")
+  String outputTimestamp;
+
+  /**
+   * The format of the output files:
+   * text:      rendered by the renderers the modules set (default)
+   * pklBinary: the values of the output files in the pkl-binary encoding, named with an additional
+   *            .pklbin suffix, for applications to decode instead of evaluating Pkl at startup
+   */
+  @Parameter(property = "pkl.outputFormat", defaultValue = "text")
+  String outputFormat = "text";
+
+  /**
+   * Formats to render the output value of every module to, instead of writing the files of its
+   * output. Each module is evaluated once for all formats. See {@link OutputFormat}.
+   */
+  @Parameter List<OutputFormat> outputFormats = List.of();
 
   /**
    * Whether to overwrite existing files.
@@ -58,6 +115,13 @@ public final class EvalMojo extends AbstractMojo {
   @Parameter(defaultValue = "true")
   boolean overwrite;
 
+  /**
+   * Whether to leave existing files untouched if their content equals the evaluated output, which
+   * keeps their modification time for later incremental steps of the build.
+   */
+  @Parameter(property = "pkl.writeIfChanged", defaultValue = "true")
+  boolean writeIfChanged;
+
   /**
    * A modulepath to use when executing.
    */
@@ -73,6 +137,99 @@ public final class EvalMojo extends AbstractMojo {
    */
   @Parameter Map<String, String> environmentVariables = Map.of();
 
+  /**
+   * Named sets of properties and environment variables to evaluate all modules with in this
+   * execution, each writing to a subdirectory of the output named after it. Evaluators are reused
+   * for the modules of a set, and different sets are evaluated in parallel. See {@link
+   * EvalVariant}.
+   */
+  @Parameter List<EvalVariant> matrix = List.of();
+
+  /**
+   * The number of modules to evaluate concurrently, each on its own evaluator.
+   * Defaults to the number of available processors.
+   */
+  @Parameter(property = "pkl.parallelism")
+  int parallelism;
+
+  /**
+   * Whether to skip modules whose source, imported modules, read resources and configuration did
+   * not change since their output files were written. Incremental builds search all files before
+   * evaluating the first one, to analyze their imports. Only with {@code false}, a single variant
+   * and no known timings are modules evaluated while the search is still running.
+   */
+  @Parameter(property = "pkl.incremental", defaultValue = "true")
+  boolean incremental;
+
+  /**
+   * The file keeping track of evaluated modules between incremental builds.
+   */
+  @Parameter(
+      defaultValue = "${project.build.directory}/pkl/${mojoExecution.executionId}.eval-state")
+  String stateFile;
+
+  /**
+   * The file keeping the import graph of the evaluated modules between builds. The modules
+   * imported by most others are loaded into every evaluator before evaluating, so they are parsed
+   * while the files are still searched. Updated by incremental builds and the graph goal.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/pkl/import-graph.properties")
+  String graphFile;
+
+  /**
+   * The file keeping the duration and CPU time of each module, to start the longest modules first
+   * when evaluating in parallel. May be shared between checkouts, as modules are identified by
+   * their path relative to ${pkl.directory}.
+   */
+  @Parameter(
+      defaultValue = "${project.build.directory}/pkl/${mojoExecution.executionId}.eval-timings")
+  String timingsFile;
+
+  /**
+   * The file to write the wall time, CPU time, allocated bytes and output files of each evaluated
+   * module to, as JSON if its name ends with {@code .json} and as CSV otherwise.
+   */
+  @Parameter(
+      property = "pkl.metricsFile",
+      defaultValue =
+          "${project.build.directory}/pkl/${mojoExecution.executionId}.eval-metrics.csv")
+  String metricsFile;
+
+  /**
+   * The number of modules that took the longest to list after evaluating.
+   */
+  @Parameter(property = "pkl.slowest", defaultValue = "5")
+  int slowest;
+
+  /**
+   * The directory to cache downloaded packages in, shared by all builds using the same local
+   * repository.
+   */
+  @Parameter(
+      property = "pkl.moduleCacheDir",
+      defaultValue = "${settings.localRepository}/.cache/pkl")
+  String moduleCacheDir;
+
+  /**
+   * Whether to only use packages from the module cache and fail instead of downloading
+   * packages, remote modules or resources. Follows Maven's offline mode by default.
+   */
+  @Parameter(property = "pkl.offline", defaultValue = "${settings.offline}")
+  boolean offline;
+
+  /**
+   * Whether to reuse evaluators, and the modules they loaded, in later executions with the same
+   * modulepath, properties and environment variables within the same Maven session.
+   */
+  @Parameter(property = "pkl.reuseEvaluators", defaultValue = "true")
+  boolean reuseEvaluators;
+
+  /**
+   * The Maven session, to share evaluators among its executions.
+   */
+  @Parameter(defaultValue = "${session}", readonly = true)
+  Object session;
+
   /**
    * Whether to skip execution.
    */
@@ -83,7 +240,90 @@ public final class EvalMojo extends AbstractMojo {
    */
   boolean color = true;
 
-  private static final int MAX_DEPTH = 8;
+  // the number of files found but not yet evaluated, beyond which the search waits
+  private static final int DISCOVERY_CAPACITY = 1024;
+
+  // the number of modules imported by most others to load into each evaluator up front
+  private static final int SHARED_MODULES = 16;
+
+  // the number of output files rendered but not yet written, beyond which evaluating waits
+  private static final int PENDING_WRITES = 64;
+
+  // the number of evaluated modules whose output files are still written, beyond which the
+  // oldest is waited for
+  private static final int PENDING_MODULES = 16;
+
+  /**
+   * The settings to evaluate with and the subdirectory of the output to write to, which is empty
+   * without a matrix.
+   */
+  private static final record Variant(String name, EvaluatorSettings settings) {
+
+    String key(final String key) {
+      return this.name.isEmpty() ? key : this.name + "/" + key;
+    }
+  }
+
+  private static final record Task(Variant variant, Path file) {
+
+    String key(final Path directory) {
+      return this.variant.key(Timings.key(directory, this.file));
+    }
+
+    String stateKey() {
+      return this.variant.key(EvalMojo.stateKey(this.file));
+    }
+  }
+
+  /**
+   * Holds the evaluator of a worker thread, which is replaced once the worker moves on to a
+   * variant with other settings.
+   */
+  private static final class Worker {
+    private final SessionEvaluators evaluators;
+    private final List<URI> sharedModules;
+    private SharedEvaluator shared;
+
+    Worker(final SessionEvaluators evaluators, final List<URI> sharedModules) {
+      this.evaluators = evaluators;
+      this.sharedModules = sharedModules;
+    }
+
+    SharedEvaluator use(final Variant variant) {
+      if (this.shared != null && this.shared.settings().equals(variant.settings())) {
+        return this.shared;
+      }
+      this.release();
+      this.shared = this.evaluators.acquire(variant.settings());
+      this.shared.load(this.sharedModules);
+      return this.shared;
+    }
+
+    void release() {
+      if (this.shared != null) {
+        this.evaluators.release(this.shared);
+        this.shared = null;
+      }
+    }
+  }
+
+  private static final record Result(
+      Task task,
+      EvalStats stats,
+      Timings.Timing timing,
+      OptionalLong allocatedBytes,
+      BufferedLog log,
+      List<Path> outputs,
+      List<OutputWriter.Write> writes,
+      SortedMap<String, OutputContent> archived,
+      long outputBytes,
+      Set<URI> resources,
+      Set<URI> listings) {
+
+    boolean isWritten() {
+      return this.writes.stream().allMatch(OutputWriter.Write::isDone);
+    }
+  }
 
   public EvalMojo() {}
 
@@ -96,28 +336,239 @@ public final class EvalMojo extends AbstractMojo {
       return;
     }
     this.logger.beginExecution();
-    final Set<Path> files;
-    try {
-      final var directory = Path.of(this.directory);
-      final var globExpression = "glob:" + directory + "/" + this.files;
-      files =
-          Files.walk(directory, MAX_DEPTH)
-              .filter(FileSystems.getDefault().getPathMatcher(globExpression)::matches)
-              .collect(Collectors.toSet());
+    if (this.output == null && this.outputArchive == null) {
+      throw new MojoFailureException("Either output or outputArchive has to be set");
+    }
+    final var binary =
+        switch (this.outputFormat) {
+          case "text" -> false;
+          case "pklBinary" -> true;
+          default ->
+              throw new MojoFailureException(
+                  "Unknown outputFormat '" + this.outputFormat + "'. expected text or pklBinary");
+        };
+    this.checkOutputFormats(binary);
+    final var variants = this.variants();
+    final var timestamp =
+        OutputArchive.timestamp(this.outputTimestamp)
+            .orElseThrow(
+                () ->
+                    new MojoFailureException(
+                        "Invalid outputTimestamp '"
+                            + this.outputTimestamp
+                            + "'. expected an ISO 8601 date-time or seconds since the epoch"));
+    final var directory = Path.of(this.directory);
+    final var discovery =
+        new FileDiscovery(
+            List.of(this.files), FileDiscovery.excludes(this.excludes, this.useDefaultExcludes));
+    final long start = System.currentTimeMillis();
+    // every output file mapped to the module writing it, to detect modules overwriting each other
+    final ConcurrentMap<Path, Path> outputs = new ConcurrentHashMap<>();
+    final var statsBuilder = EvalStats.builder();
+    final Map<Variant, EvalStats.Builder> variantStats = new LinkedHashMap<>();
+    for (final var variant : variants) {
+      variantStats.put(variant, EvalStats.builder());
+    }
+    final var dependencyState =
+        new DependencyState(new ContentHashes(this.modulepathEntries()));
+    final var evaluators = SessionEvaluators.of(this.reuseEvaluators ? this.session : null);
+    // an archive is written as a whole, so no module can be left out
+    final var incremental =
+        this.incremental && this.stateFile != null && this.outputArchive == null;
+    final var fingerprint = incremental ? this.fingerprint() : "";
+    final var previousState =
+        incremental ? BuildState.load(Path.of(this.stateFile), fingerprint) : null;
+    final var state = incremental ? BuildState.empty(Path.of(this.stateFile), fingerprint) : null;
+    // the state lines of all imported modules, for each module to evaluate
+    final Map<Task, List<String>> dependencies = new HashMap<>();
+    final var sharedModules =
+        this.graphFile != null
+            ? ImportGraph.load(Path.of(this.graphFile)).mostShared(SHARED_MODULES)
+            : List.<URI>of();
+    ImportGraph graph = null;
+    final var timings = this.timingsFile != null ? Timings.load(Path.of(this.timingsFile)) : null;
+    // known durations are only of use to start the longest modules first if they run in parallel
+    final var scheduled =
+        timings != null
+            && !timings.isEmpty()
+            && WorkerPool.effectiveParallelism(this.parallelism) > 1;
+    final var metrics = new EvalMetrics();
+    final var archive =
+        this.outputArchive != null
+            ? new OutputArchive(Path.of(this.outputArchive), this.outputArchiveLevel, timestamp)
+            : null;
+    final WorkerPool.ResultConsumer<Result> complete =
+        result -> {
+          result.log().flush();
+          final var variantStatsBuilder = variantStats.get(result.task().variant());
+          statsBuilder.addAll(result.stats());
+          variantStatsBuilder.addAll(result.stats());
+          int unchanged = 0;
+          for (final var write : result.writes()) {
+            switch (write.await()) {
+              case WRITTEN -> this.logger.writeFile(write.file());
+              case SKIPPED -> this.logger.writeFileSkipped(write.file());
+              case UNCHANGED -> {
+                this.logger.writeFileUnchanged(write.file());
+                unchanged++;
+              }
+            }
+          }
+          for (final var entry : result.archived().entrySet()) {
+            this.logger.archiveFile(entry.getKey());
+            archive.add(entry.getKey(), entry.getValue());
+          }
+          final var created = result.writes().size() - unchanged + result.archived().size();
+          statsBuilder.addFilesCreated(created).addFilesUnchanged(unchanged);
+          variantStatsBuilder.addFilesCreated(created).addFilesUnchanged(unchanged);
+          final var key = result.task().key(directory);
+          if (timings != null) {
+            timings.put(key, result.timing());
+          }
+          metrics.add(
+              new EvalMetrics.Module(
+                  key,
+                  result.timing(),
+                  result.allocatedBytes(),
+                  result.outputs().size(),
+                  result.outputBytes()));
+          if (incremental && !result.outputs().isEmpty()) {
+            state.put(
+                result.task().stateKey(),
+                this.stateEntry(result, dependencies.get(result.task()), dependencyState));
+          }
+        };
+    // modules are completed in order once their output files are written, while the next ones
+    // are evaluated
+    final Deque<Result> unwritten = new ArrayDeque<>();
+    final WorkerPool.ResultConsumer<Result> consumer =
+        result -> {
+          unwritten.add(result);
+          while (!unwritten.isEmpty()
+              && (unwritten.size() > PENDING_MODULES || unwritten.peek().isWritten())) {
+            complete.accept(unwritten.poll());
+          }
+        };
+    // the evaluators start up while the files are searched, and modules are evaluated as soon as
+    // they are found unless all of them are needed first, to schedule them or for their import
+    // graph
+    try (archive;
+        final var files = discovery.start(directory, DISCOVERY_CAPACITY);
+        final var writer = new OutputWriter(this.overwrite, this.writeIfChanged, PENDING_WRITES);
+        final var workers =
+            new WorkerPool<>(
+                this.parallelism,
+                "pkl-eval",
+                () -> new Worker(evaluators, sharedModules),
+                Worker::release)) {
+      workers.warmUp(worker -> worker.use(variants.get(0)).warmUp());
+      if (!incremental && !scheduled && variants.size() == 1) {
+        workers.forEachOrdered(
+            files,
+            (worker, file) ->
+                this.evalFile(worker, writer, new Task(variants.get(0), file), binary, outputs),
+            consumer);
+      } else {
+        final List<Path> allFiles = new ArrayList<>();
+        files.forEach(allFiles::add);
+        if (incremental) {
+          graph =
+              workers.call(
+                  worker -> ImportGraph.analyze(worker.use(variants.get(0)).evaluator(), allFiles));
+        }
+        // the modules of one variant after another, so workers rarely change their evaluator
+        final List<Task> outdated = new ArrayList<>();
+        final Map<Path, List<String>> moduleDependencies = new HashMap<>();
+        for (final var variant : variants) {
+          for (final var file : allFiles) {
+            final var task = new Task(variant, file);
+            if (!incremental) {
+              outdated.add(task);
+              continue;
+            }
+            final var key = task.stateKey();
+            var fileDependencies = moduleDependencies.get(file);
+            if (fileDependencies == null) {
+              fileDependencies = dependencyState.modules(graph, file);
+              moduleDependencies.put(file, fileDependencies);
+            }
+            final var entry = previousState.get(key);
+            if (entry.isPresent() && dependencyState.isUpToDate(entry.get(), fileDependencies)) {
+              this.logger.moduleUpToDate(file, variant.name());
+              statsBuilder.addModulesUpToDate(1);
+              variantStats.get(variant).addModulesUpToDate(1);
+              state.put(key, entry.get());
+              for (final var outputFile :
+                  DependencyState.paths(entry.get(), DependencyState.OUTPUT)) {
+                outputs.put(outputFile, file);
+              }
+            } else {
+              dependencies.put(task, fileDependencies);
+              outdated.add(task);
+            }
+          }
+        }
+        workers.forEachOrdered(
+            outdated,
+            EvalMojo.schedule(variants, directory, timings),
+            (worker, task) -> this.evalFile(worker, writer, task, binary, outputs),
+            consumer);
+      }
+      while (!unwritten.isEmpty()) {
+        complete.accept(unwritten.poll());
+      }
+      if (archive != null) {
+        // only once every module succeeded, so a failed build keeps the previous archive
+        archive.commit();
+        this.logger.writeArchive(archive.file(), archive.entries());
+      }
     } catch (final IOException exception) {
       throw new MojoExecutionException("Failed to read pkl files", exception);
+    } catch (final UncheckedIOException exception) {
+      throw new MojoExecutionException("Failed to read pkl files", exception.getCause());
     }
-    final var statsBuilder = EvalStats.builder();
-    try (final var modulePathResolver = this.modulePathResolver();
-        final var evaluator = this.evaluator(modulePathResolver)) {
-      for (final var file : files) {
-        statsBuilder.addAll(this.evalFile(evaluator, file));
+    if (incremental) {
+      try {
+        state.store();
+      } catch (final IOException exception) {
+        throw new MojoExecutionException("Failed to write " + this.stateFile, exception);
       }
     }
-    final var stats = statsBuilder.build();
-    if (stats.filesCreated() == 0) {
+    if (graph != null && this.graphFile != null) {
+      try {
+        ImportGraph.update(Path.of(this.graphFile), graph);
+      } catch (final IOException exception) {
+        throw new MojoExecutionException("Failed to write " + this.graphFile, exception);
+      }
+    }
+    if (timings != null) {
+      try {
+        timings.store();
+      } catch (final IOException exception) {
+        throw new MojoExecutionException("Failed to write " + this.timingsFile, exception);
+      }
+      new TimingLogger(this.getLog()).deviations(timings.deviations());
+    }
+    if (this.metricsFile != null) {
+      try {
+        metrics.store(Path.of(this.metricsFile));
+      } catch (final IOException exception) {
+        throw new MojoExecutionException("Failed to write " + this.metricsFile, exception);
+      }
+    }
+    // the modules' times add up to more than the wall time when evaluated concurrently
+    final double secondsElapsed = ((double) (System.currentTimeMillis() - start)) / 1_000;
+    final var stats = statsBuilder.setSecondsElapsed(secondsElapsed).build();
+    if (stats.filesCreated() == 0
+        && stats.filesUnchanged() == 0
+        && stats.modulesUpToDate() == 0) {
       throw new MojoFailureException("No files were evaluated!");
     }
+    this.logger.slowestModules(metrics.slowest(this.slowest));
+    if (!this.matrix.isEmpty()) {
+      variantStats.forEach(
+          (variant, builder) -> this.logger.variantSummary(variant.name(), builder.build()));
+    }
     this.logger.summary(stats);
   }
 
@@ -127,87 +578,287 @@ public final class EvalMojo extends AbstractMojo {
     this.logger = new EvalLogger(log);
   }
 
-  private final ModulePathResolver modulePathResolver() {
-    final Set<Path> modulepath =
-        this.modulepath != null
-            ? this.modulepath.stream().map(Path::of).collect(Collectors.toSet())
-            : Set.of();
-    return new ModulePathResolver(modulepath);
-  }
-
-  private final Evaluator evaluator(final ModulePathResolver modulePathResolver) {
-    return EvaluatorBuilder.unconfigured()
-        .setStackFrameTransformer(StackFrameTransformers.defaultTransformer)
-        .setAllowedModules(SecurityManagers.defaultAllowedModules)
-        .setAllowedResources(SecurityManagers.defaultAllowedResources)
-        .addModuleKeyFactory(ModuleKeyFactories.standardLibrary)
-        .addModuleKeyFactory(ModuleKeyFactories.modulePath(modulePathResolver))
-        .addModuleKeyFactory(ModuleKeyFactories.file)
-        .addModuleKeyFactory(ModuleKeyFactories.http)
-        .addModuleKeyFactory(ModuleKeyFactories.pkg)
-        .addModuleKeyFactory(ModuleKeyFactories.projectpackage)
-        .addModuleKeyFactory(ModuleKeyFactories.genericUrl)
-        .addResourceReader(ResourceReaders.file())
-        .addResourceReader(ResourceReaders.http())
-        .addResourceReader(ResourceReaders.https())
-        .addResourceReader(ResourceReaders.pkg())
-        .addResourceReader(ResourceReaders.projectpackage())
-        .addResourceReader(ResourceReaders.modulePath(modulePathResolver))
-        .addResourceReader(ResourceReaders.environmentVariable())
-        .addResourceReader(ResourceReaders.externalProperty())
-        .addEnvironmentVariables(this.environmentVariables)
-        .addExternalProperties(this.properties)
-        .setPowerAssertionsEnabled(true)
-        .setColor(this.color)
-        .build();
-  }
-
-  private final EvalStats evalFile(final Evaluator evaluator, final Path file)
+  private static String stateKey(final Path file) {
+    return file.toAbsolutePath().normalize().toString();
+  }
+
+  /**
+   * Orders the modules by variant, and those of a variant by their previous durations, the longest
+   * first.
+   */
+  private static Comparator<Task> schedule(
+      final List<Variant> variants, final Path directory, final Timings timings) {
+    final Comparator<Task> byVariant =
+        Comparator.comparingInt((final Task task) -> variants.indexOf(task.variant()));
+    if (timings == null) {
+      return byVariant;
+    }
+    return byVariant.thenComparing(
+        Comparator.comparingDouble(
+                (final Task task) -> timings.expectedSeconds(task.key(directory)))
+            .reversed());
+  }
+
+  /**
+   * Identifies everything besides modules and resources that influences the output files.
+   */
+  private String fingerprint() {
+    return ContentHashes.of(
+        String.join(
+            "\n",
+            Release.current().version().toString(),
+            new TreeMap<>(this.properties).toString(),
+            new TreeMap<>(this.environmentVariables).toString(),
+            this.modulepathEntries().stream().map(Path::toString).sorted().toList().toString(),
+            Path.of(this.output).toAbsolutePath().normalize().toString(),
+            String.valueOf(this.overwrite),
+            this.outputFormat,
+            this.outputFormats.toString(),
+            this.matrix.toString()));
+  }
+
+  private List<String> stateEntry(
+      final Result result,
+      final List<String> moduleDependencies,
+      final DependencyState dependencyState) {
+    final List<String> entry = new ArrayList<>(moduleDependencies);
+    entry.addAll(dependencyState.resources(result.resources()));
+    entry.addAll(dependencyState.listings(result.listings()));
+    entry.addAll(dependencyState.files(DependencyState.OUTPUT, result.outputs()));
+    return entry;
+  }
+
+  private final Set<Path> modulepathEntries() {
+    return this.modulepath != null
+        ? this.modulepath.stream().map(Path::of).collect(Collectors.toSet())
+        : Set.of();
+  }
+
+  /**
+   * Returns the variants of the matrix, or a single one with the settings of the execution.
+   */
+  private List<Variant> variants() throws MojoFailureException {
+    if (this.matrix.isEmpty()) {
+      return List.of(new Variant("", this.evaluatorSettings(Map.of(), Map.of())));
+    }
+    final Set<String> names = new HashSet<>();
+    final List<Variant> variants = new ArrayList<>(this.matrix.size());
+    for (final var variant : this.matrix) {
+      if (variant.name == null
+          || !OutputArchive.entryName(variant.name).equals(Optional.of(variant.name))) {
+        throw new MojoFailureException(
+            "Invalid matrix variant name '" + variant.name + "'. expected a relative path");
+      }
+      if (!names.add(variant.name)) {
+        throw new MojoFailureException("Duplicate matrix variant name '" + variant.name + "'");
+      }
+      variants.add(
+          new Variant(
+              variant.name,
+              this.evaluatorSettings(variant.properties, variant.environmentVariables)));
+    }
+    return variants;
+  }
+
+  private final EvaluatorSettings evaluatorSettings(
+      final Map<String, String> properties, final Map<String, String> environmentVariables) {
+    final Map<String, String> allProperties = new HashMap<>(this.properties);
+    allProperties.putAll(properties);
+    final Map<String, String> allEnvironmentVariables = new HashMap<>(this.environmentVariables);
+    allEnvironmentVariables.putAll(environmentVariables);
+    return new EvaluatorSettings(
+        this.modulepathEntries(),
+        allProperties,
+        allEnvironmentVariables,
+        this.moduleCacheDir != null ? Path.of(this.moduleCacheDir) : null,
+        this.offline,
+        this.color);
+  }
+
+  private final Result evalFile(
+      final Worker worker,
+      final OutputWriter outputWriter,
+      final Task task,
+      final boolean binary,
+      final ConcurrentMap<Path, Path> outputs)
       throws MojoExecutionException {
-    this.logger.evalFile(file);
-    final long start = System.currentTimeMillis();
-    final var results = evaluator.evaluateOutputFiles(ModuleSource.path(file));
+    final var file = task.file();
+    final var log = new BufferedLog(this.getLog());
+    final var logger = new EvalLogger(log);
+    logger.evalFile(file, task.variant().name());
+    final var shared = worker.use(task.variant());
+    final var stopwatch = Timings.Stopwatch.start();
+    final var results = this.evaluateOutputFiles(shared.evaluator(), file, binary);
     if (results.isEmpty()) {
-      final double secondsElapsed = ((double) (System.currentTimeMillis() - start)) / 1_000;
-      this.logger.noFilesWritten(file);
-      return EvalStats.builder()
-          .setFilesEvaluated(1)
-          .setFilesCreated(0)
-          .setSecondsElapsed(secondsElapsed)
-          .build();
-    }
-    final var output = Paths.get(this.output);
+      final var timing = stopwatch.stop();
+      logger.noFilesWritten(file);
+      return new Result(
+          task,
+          EvalStats.builder().setFilesEvaluated(1).setSecondsElapsed(timing.seconds()).build(),
+          timing,
+          stopwatch.allocatedBytes(),
+          log,
+          List.of(),
+          List.of(),
+          Collections.emptySortedMap(),
+          0,
+          Set.of(),
+          Set.of());
+    }
+    final List<Path> written = new ArrayList<>(results.size());
+    final List<OutputWriter.Write> writes = new ArrayList<>(results.size());
+    // sorted, so the entries of the archive are in the same order on every build
+    final SortedMap<String, OutputContent> archived = new TreeMap<>();
+    long outputBytes = 0;
     for (final var result : results.entrySet()) {
-      final var outputFile = output.resolve(result.getKey());
-      try {
-        this.writeFile(outputFile, result.getValue().getText());
-      } catch (final IOException exception) {
-        throw new MojoExecutionException("Failed to write " + outputFile, exception);
+      final var content = result.getValue();
+      outputBytes += content.size();
+      if (this.outputArchive != null) {
+        final var entry =
+            OutputArchive.entryName(result.getKey())
+                .map(task.variant()::key)
+                .orElseThrow(
+                    () ->
+                        new MojoExecutionException(
+                            file + " writes " + result.getKey() + " outside of the archive"));
+        final var writer = outputs.putIfAbsent(Path.of(entry), file);
+        if (writer != null) {
+          throw new MojoExecutionException("Both " + writer + " and " + file + " write " + entry);
+        }
+        archived.put(entry, content);
+        continue;
+      }
+      final var outputFile =
+          Paths.get(this.output).resolve(task.variant().name()).resolve(result.getKey());
+      final var writer = outputs.putIfAbsent(outputFile.toAbsolutePath().normalize(), file);
+      if (writer != null) {
+        throw new MojoExecutionException(
+            "Both " + writer + " and " + file + " write " + outputFile);
       }
+      written.add(outputFile.toAbsolutePath().normalize());
+      writes.add(outputWriter.write(outputFile, content));
     }
-    final double secondsElapsed = ((double) (System.currentTimeMillis() - start)) / 1_000;
-    return EvalStats.builder()
-        .setFilesEvaluated(1)
-        .setFilesCreated(results.size())
-        .setSecondsElapsed(secondsElapsed)
-        .build();
+    // rendered, the output files are written in the background
+    final var timing = stopwatch.stop();
+    return new Result(
+        task,
+        EvalStats.builder().setFilesEvaluated(1).setSecondsElapsed(timing.seconds()).build(),
+        timing,
+        stopwatch.allocatedBytes(),
+        log,
+        written,
+        writes,
+        archived,
+        outputBytes,
+        shared.recorder().resources(),
+        shared.recorder().listings());
   }
 
-  private void writeFile(final Path file, final String text) throws IOException {
-    if (Files.exists(file) && !this.overwrite) {
-      this.logger.writeFileSkipped(file);
+  private void checkOutputFormats(final boolean binary) throws MojoFailureException {
+    if (this.outputFormats.isEmpty()) {
       return;
     }
-    this.logger.writeFile(file);
-    final var parent = file.getParent();
-    if (parent != null) {
-      Files.createDirectories(parent);
-    }
-    Files.write(
-        file,
-        text.getBytes(StandardCharsets.UTF_8),
-        StandardOpenOption.CREATE,
-        StandardOpenOption.TRUNCATE_EXISTING,
-        StandardOpenOption.WRITE);
+    if (binary) {
+      throw new MojoFailureException("outputFormat pklBinary can not be used with outputFormats");
+    }
+    final Set<String> fileNames = new HashSet<>();
+    for (final var format : this.outputFormats) {
+      if (format.renderer().isEmpty()) {
+        throw new MojoFailureException(
+            "Unknown output format '"
+                + format.format
+                + "'. expected json, jsonnet, pcf, plist, properties, textproto, xml, yaml or"
+                + " pklBinary");
+      }
+      if (!fileNames.add(format.fileName(Path.of(""), Path.of("module.pkl")))) {
+        throw new MojoFailureException(
+            "Output format " + format.format + " is written to the file of another format");
+      }
+    }
+  }
+
+  /**
+   * Evaluates the output files of the module, as text or encoded in pkl-binary by a module
+   * rendering the values of its output files instead. With output formats, the output value of
+   * the module is rendered to all of them by a single module.
+   */
+  private Map<String, OutputContent> evaluateOutputFiles(
+      final Evaluator evaluator, final Path file, final boolean binary) {
+    if (!this.outputFormats.isEmpty()) {
+      return this.evaluateOutputFormats(evaluator, file);
+    }
+    final Map<String, OutputContent> contents = new LinkedHashMap<>();
+    if (!binary) {
+      for (final var output : evaluator.evaluateOutputFiles(ModuleSource.path(file)).entrySet()) {
+        contents.put(output.getKey(), new OutputContent.Text(output.getValue().getText()));
+      }
+      return contents;
+    }
+    final var uri = file.toAbsolutePath().normalize().toUri();
+    final var source =
+        ModuleSource.create(
+            URI.create("repl:pklbinary/" + uri.getRawPath()),
+            """
+            import "pkl:pklbinary"
+            import %s as subject
+
+            output {
+              files {
+                for (path, file in subject.output.files ?? new Mapping {}) {
+                  ["\\(path).pklbin"] {
+                    value = file.value
+                    renderer = new pklbinary.Renderer {}
+                  }
+                }
+              }
+            }
+            """
+                .formatted(ImportGraph.quote(uri.toString())));
+    for (final var output : evaluator.evaluateOutputFiles(source).entrySet()) {
+      contents.put(output.getKey(), new OutputContent.Binary(output.getValue().getBytes()));
+    }
+    return contents;
+  }
+
+  private Map<String, OutputContent> evaluateOutputFormats(
+      final Evaluator evaluator, final Path file) {
+    final var uri = file.toAbsolutePath().normalize().toUri();
+    final Map<String, OutputFormat.Renderer> renderers = new LinkedHashMap<>();
+    final var module = new StringBuilder();
+    final var files = new StringBuilder();
+    for (final var format : this.outputFormats) {
+      final var fileName = format.fileName(Path.of(this.directory), file);
+      final var renderer = format.renderer().orElseThrow();
+      renderers.put(fileName, renderer);
+      files
+          .append("    [")
+          .append(ImportGraph.quote(fileName))
+          .append("] {\n      value = subject.output.value\n      renderer = ")
+          .append(renderer.expression())
+          .append("\n    }\n");
+    }
+    renderers.values().stream()
+        .flatMap(renderer -> renderer.module().stream())
+        .distinct()
+        .forEach(
+            rendererModule ->
+                module.append("import ").append(ImportGraph.quote(rendererModule)).append('\n'));
+    module
+        .append("import ")
+        .append(ImportGraph.quote(uri.toString()))
+        .append(" as subject\n\noutput {\n  files {\n")
+        .append(files)
+        .append("  }\n}\n");
+    final var source =
+        ModuleSource.create(URI.create("repl:formats/" + uri.getRawPath()), module.toString());
+    final Map<String, OutputContent> contents = new LinkedHashMap<>();
+    for (final var output : evaluator.evaluateOutputFiles(source).entrySet()) {
+      contents.put(
+          output.getKey(),
+          renderers.get(output.getKey()).isBinary()
+              ? new OutputContent.Binary(output.getValue().getBytes())
+              : new OutputContent.Text(output.getValue().getText()));
+    }
+    return contents;
   }
 }
@@ -1,15 +1,24 @@
 package com.sitepark.maven.plugins.pkl;
 
-final record EvalStats(int filesEvaluated, int filesCreated, double secondsElapsed) {
+final record EvalStats(
+    int filesEvaluated,
+    int filesCreated,
+    int filesUnchanged,
+    int modulesUpToDate,
+    double secondsElapsed) {
 
   public static final class Builder {
     private int filesEvaluated;
     private int filesCreated;
+    private int filesUnchanged;
+    private int modulesUpToDate;
     private double secondsElapsed;
 
     private Builder() {
       this.filesEvaluated = 0;
       this.filesCreated = 0;
+      this.filesUnchanged = 0;
+      this.modulesUpToDate = 0;
     }
 
     public Builder setFilesEvaluated(final int amount) {
@@ -32,6 +41,26 @@ final record EvalStats(int filesEvaluated, int filesCreated, double secondsElaps
       return this;
     }
 
+    public Builder setFilesUnchanged(final int amount) {
+      this.filesUnchanged = amount;
+      return this;
+    }
+
+    public Builder addFilesUnchanged(final int amount) {
+      this.filesUnchanged += amount;
+      return this;
+    }
+
+    public Builder setModulesUpToDate(final int amount) {
+      this.modulesUpToDate = amount;
+      return this;
+    }
+
+    public Builder addModulesUpToDate(final int amount) {
+      this.modulesUpToDate += amount;
+      return this;
+    }
+
     public Builder setSecondsElapsed(final double seconds) {
       this.secondsElapsed = seconds;
       return this;
@@ -45,12 +74,19 @@ final record EvalStats(int filesEvaluated, int filesCreated, double secondsElaps
     public Builder addAll(final EvalStats other) {
       this.addFilesEvaluated(other.filesEvaluated())
           .addFilesCreated(other.filesCreated())
+          .addFilesUnchanged(other.filesUnchanged())
+          .addModulesUpToDate(other.modulesUpToDate())
           .addSecondsElapsed(other.secondsElapsed());
       return this;
     }
 
     public EvalStats build() {
-      return new EvalStats(this.filesEvaluated, this.filesCreated, this.secondsElapsed);
+      return new EvalStats(
+          this.filesEvaluated,
+          this.filesCreated,
+          this.filesUnchanged,
+          this.modulesUpToDate,
+          this.secondsElapsed);
     }
   }
 
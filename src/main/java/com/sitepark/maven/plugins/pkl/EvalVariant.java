@@ -0,0 +1,52 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A set of properties and environment variables to evaluate all modules with, configured as
+ *
+ * <pre>
+ * &lt;variant&gt;
+ *   &lt;name&gt;production&lt;/name&gt;
+ *   &lt;properties&gt;
+ *     &lt;stage&gt;production&lt;/stage&gt;
+ *   &lt;/properties&gt;
+ * &lt;/variant&gt;
+ * </pre>
+ */
+public final class EvalVariant {
+
+  /**
+   * The name of the variant and the subdirectory of the output its files are written to.
+   */
+  String name;
+
+  /**
+   * Properties to use in addition to, or instead of, those of the execution.
+   */
+  Map<String, String> properties = Map.of();
+
+  /**
+   * Environment variables to use in addition to, or instead of, those of the execution.
+   */
+  Map<String, String> environmentVariables = Map.of();
+
+  public EvalVariant() {}
+
+  EvalVariant(
+      final String name,
+      final Map<String, String> properties,
+      final Map<String, String> environmentVariables) {
+    this.name = name;
+    this.properties = properties;
+    this.environmentVariables = environmentVariables;
+  }
+
+  @Override
+  public String toString() {
+    return this.name
+        + new TreeMap<>(this.properties).toString()
+        + new TreeMap<>(this.environmentVariables).toString();
+  }
+}
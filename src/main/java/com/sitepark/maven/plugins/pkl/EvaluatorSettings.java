@@ -0,0 +1,77 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.pkl.core.EvaluatorBuilder;
+import org.pkl.core.SecurityManagers;
+import org.pkl.core.StackFrameTransformers;
+import org.pkl.core.module.ModuleKeyFactories;
+import org.pkl.core.module.ModulePathResolver;
+import org.pkl.core.resource.ResourceReaders;
+
+/**
+ * Everything an evaluator is configured with. Evaluators created from equal settings are
+ * interchangeable.
+ *
+ * The allowed modules and resources are always the defaults of pkl and are therefore not part of
+ * the settings.
+ *
+ * @param moduleCacheDir the directory to cache packages in, or {@code null} to not cache them
+ * @param offline whether to only use packages from the module cache and not to download anything
+ */
+final record EvaluatorSettings(
+    Set<Path> modulepath,
+    Map<String, String> properties,
+    Map<String, String> environmentVariables,
+    Path moduleCacheDir,
+    boolean offline,
+    boolean color) {
+
+  EvaluatorSettings {
+    modulepath = Collections.unmodifiableSet(new TreeSet<>(modulepath));
+    properties = Collections.unmodifiableMap(new TreeMap<>(properties));
+    environmentVariables = Collections.unmodifiableMap(new TreeMap<>(environmentVariables));
+  }
+
+  public SharedEvaluator create() {
+    final var modulePathResolver = new ModulePathResolver(this.modulepath);
+    final var recorder = new DependencyRecorder(this.modulepath);
+    final var builder =
+        EvaluatorBuilder.unconfigured()
+            .setStackFrameTransformer(StackFrameTransformers.defaultTransformer)
+            .setAllowedModules(SecurityManagers.defaultAllowedModules)
+            .setAllowedResources(SecurityManagers.defaultAllowedResources)
+            .addModuleKeyFactory(ModuleKeyFactories.standardLibrary)
+            .addModuleKeyFactory(
+                recorder.record(ModuleKeyFactories.modulePath(modulePathResolver)))
+            .addModuleKeyFactory(recorder.record(ModuleKeyFactories.file))
+            .addModuleKeyFactory(ModuleKeyFactories.http)
+            .addModuleKeyFactory(ModuleKeyFactories.pkg)
+            .addModuleKeyFactory(ModuleKeyFactories.projectpackage)
+            .addModuleKeyFactory(ModuleKeyFactories.genericUrl)
+            .addResourceReader(recorder.record(ResourceReaders.file()))
+            .addResourceReader(ResourceReaders.http())
+            .addResourceReader(ResourceReaders.https())
+            .addResourceReader(recorder.record(ResourceReaders.pkg()))
+            .addResourceReader(recorder.record(ResourceReaders.projectpackage()))
+            .addResourceReader(recorder.record(ResourceReaders.modulePath(modulePathResolver)))
+            .addResourceReader(ResourceReaders.environmentVariable())
+            .addResourceReader(ResourceReaders.externalProperty())
+            .addEnvironmentVariables(this.environmentVariables)
+            .addExternalProperties(this.properties)
+            .setPowerAssertionsEnabled(true)
+            .setColor(this.color);
+    if (this.moduleCacheDir != null) {
+      builder.setModuleCacheDir(this.moduleCacheDir);
+    }
+    if (this.offline) {
+      builder.setHttpClient(new OfflineHttpClient());
+    }
+    final var evaluator = builder.build();
+    return new SharedEvaluator(this, modulePathResolver, evaluator, recorder);
+  }
+}
@@ -0,0 +1,416 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+/**
+ * Finds the files below a directory matching any of the include patterns and none of the exclude
+ * patterns. Patterns are globs relative to the directory.
+ *
+ * Directories matching an exclude pattern are not descended into, and the walk only starts at the
+ * literal prefix of each include pattern, like {@code src/pkl} for {@code src/pkl/**.pkl}.
+ * The files found are sorted, whether all of them are collected by walking subdirectories in
+ * parallel or handed out one by one while walking in the background.
+ *
+ * Every directory is listed completely before any of its files is handed out, so files created
+ * or deleted while the files found are processed, like the {@code -actual.pcf} files of tests,
+ * don't disturb the walk.
+ */
+final class FileDiscovery {
+  private final List<Include> includes;
+  private final List<PathMatcher> excludes;
+
+  /** Build output, version control and package manager directories. */
+  public static final List<String> DEFAULT_EXCLUDES =
+      List.of("{.git,node_modules,target}", "**/{.git,node_modules,target}");
+
+  private static final String GLOB_CHARACTERS = "*?[{\\";
+
+  // marks the end of the files found in the queue of a running discovery
+  private static final Object END = new Object();
+
+  /**
+   * @param root the directory to start walking in, relative to the base directory
+   * @param maxDepth the depth of the deepest file that can match, relative to the root
+   */
+  private static record Include(PathMatcher matcher, Path root, int maxDepth) {}
+
+  /**
+   * @param relative the path relative to the base directory
+   * @param directory whether to descend into it, otherwise it is a matching file
+   */
+  private static record Child(Path relative, boolean directory) {
+
+    // everything below a directory sorts after the files sharing its name as a prefix
+    String sortKey() {
+      return this.relative.getFileName() + (this.directory ? "/" : "");
+    }
+  }
+
+  /**
+   * Files found by a discovery still running in the background, in sorted order.
+   */
+  public final class Running implements Iterable<Path>, AutoCloseable {
+    private final BlockingQueue<Object> queue;
+    private final Thread producer;
+
+    private Running(final Path directory, final int capacity) {
+      this.queue = new ArrayBlockingQueue<>(capacity);
+      this.producer =
+          Thread.ofPlatform()
+              .name("pkl-discovery")
+              .daemon()
+              .unstarted(() -> this.produce(directory));
+    }
+
+    private void produce(final Path directory) {
+      // ends the files in the queue, unless the discovery was closed
+      Object end = new IllegalStateException("Failed to search " + directory);
+      try {
+        final var roots = FileDiscovery.this.roots();
+        if (roots.size() == 1) {
+          final var root = roots.get(0);
+          if (Files.isDirectory(directory.resolve(root.root()))
+              && !FileDiscovery.this.isExcluded(root.root())) {
+            this.walk(directory, root.root(), root.maxDepth());
+          }
+        } else {
+          for (final var file : FileDiscovery.this.find(directory)) {
+            this.queue.put(file);
+          }
+        }
+        end = END;
+      } catch (final UncheckedIOException exception) {
+        end = exception.getCause();
+      } catch (final DirectoryIteratorException exception) {
+        end = exception.getCause();
+      } catch (final IOException | RuntimeException exception) {
+        end = exception;
+      } catch (final InterruptedException exception) {
+        // closed before all files were consumed
+        end = null;
+      } finally {
+        if (end != null) {
+          this.end(end);
+        }
+      }
+    }
+
+    /**
+     * Hands over the end of the files or the failure, which the consumer waits for. Files still
+     * queued are of no use after a failure, and are dropped to make room for it.
+     */
+    private void end(final Object end) {
+      if (end != END) {
+        this.queue.clear();
+      }
+      try {
+        this.queue.put(end);
+      } catch (final InterruptedException exception) {
+        // closed before all files were consumed
+      }
+    }
+
+    private void walk(final Path base, final Path relative, final int depth)
+        throws IOException, InterruptedException {
+      for (final var child : FileDiscovery.this.children(base, relative, depth > 1)) {
+        if (child.directory()) {
+          this.walk(base, child.relative(), depth - 1);
+        } else {
+          this.queue.put(base.resolve(child.relative()));
+        }
+      }
+    }
+
+    /**
+     * Returns the files found so far and waits for further ones. Can only be iterated once. A
+     * failure to read the files is thrown as an {@link UncheckedIOException}, any other failure of
+     * the discovery as is.
+     */
+    @Override
+    public Iterator<Path> iterator() {
+      return new Iterator<>() {
+        private Object next;
+
+        @Override
+        public boolean hasNext() {
+          if (this.next == null) {
+            try {
+              this.next = Running.this.queue.take();
+            } catch (final InterruptedException exception) {
+              Thread.currentThread().interrupt();
+              throw new UncheckedIOException(new InterruptedIOException());
+            }
+          }
+          if (this.next instanceof final IOException exception) {
+            throw new UncheckedIOException(exception);
+          }
+          if (this.next instanceof final RuntimeException exception) {
+            throw exception;
+          }
+          return this.next != END;
+        }
+
+        @Override
+        public Path next() {
+          if (!this.hasNext()) {
+            throw new NoSuchElementException();
+          }
+          final var file = (Path) this.next;
+          this.next = null;
+          return file;
+        }
+      };
+    }
+
+    /**
+     * Stops the discovery if it is still running.
+     */
+    @Override
+    public void close() {
+      this.producer.interrupt();
+    }
+  }
+
+  /**
+   * Returns the given excludes, together with the {@link #DEFAULT_EXCLUDES} unless disabled.
+   */
+  public static List<String> excludes(
+      final Collection<String> excludes, final boolean useDefaultExcludes) {
+    if (!useDefaultExcludes) {
+      return List.copyOf(excludes);
+    }
+    return Stream.concat(DEFAULT_EXCLUDES.stream(), excludes.stream()).toList();
+  }
+
+  public FileDiscovery(final Collection<String> includes, final Collection<String> excludes) {
+    this.includes = includes.stream().map(FileDiscovery::include).toList();
+    this.excludes = excludes.stream().map(FileDiscovery::matcher).toList();
+  }
+
+  /**
+   * Returns the matching files, each resolved against the directory.
+   */
+  public List<Path> find(final Path directory) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      throw new NoSuchFileException(directory.toString());
+    }
+    final var found = new TreeSet<Path>();
+    try {
+      for (final var root : this.roots()) {
+        final var start = directory.resolve(root.root());
+        if (Files.isDirectory(start) && !this.isExcluded(root.root())) {
+          found.addAll(
+              ForkJoinPool.commonPool()
+                  .invoke(new Walk(directory, root.root(), root.maxDepth())));
+        }
+      }
+    } catch (final UncheckedIOException exception) {
+      throw exception.getCause();
+    }
+    return List.copyOf(found);
+  }
+
+  /**
+   * Starts to walk the directory in the background, so files can be processed before all were
+   * found. At most {@code capacity} files found are held back until they are consumed.
+   */
+  public Running start(final Path directory, final int capacity) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      throw new NoSuchFileException(directory.toString());
+    }
+    final var running = new Running(directory, capacity);
+    running.producer.start();
+    return running;
+  }
+
+  /**
+   * Returns the directories to walk, without those already walked deep enough as part of another
+   * one.
+   */
+  private List<Include> roots() {
+    final List<Include> roots = new ArrayList<>();
+    final var candidates =
+        this.includes.stream()
+            .sorted(
+                Comparator.comparingInt((final Include include) -> include.root().getNameCount())
+                    .thenComparing(Include::maxDepth, Comparator.reverseOrder()))
+            .toList();
+    for (final var include : candidates) {
+      if (roots.stream().noneMatch(root -> FileDiscovery.covers(root, include))) {
+        roots.add(include);
+      }
+    }
+    return roots;
+  }
+
+  private static boolean covers(final Include outer, final Include inner) {
+    if (!inner.root().startsWith(outer.root())) {
+      return false;
+    }
+    final long distance = outer.root().relativize(inner.root()).getNameCount();
+    return outer.maxDepth() == Integer.MAX_VALUE
+        || inner.maxDepth() != Integer.MAX_VALUE
+            && outer.maxDepth() >= inner.maxDepth() + distance;
+  }
+
+  /**
+   * Whether the path, relative to the base directory, matches one of the excludes.
+   */
+  boolean isExcluded(final Path relative) {
+    return !relative.toString().isEmpty()
+        && this.excludes.stream().anyMatch(exclude -> exclude.matches(relative));
+  }
+
+  private boolean isIncluded(final Path relative) {
+    return this.includes.stream().anyMatch(include -> include.matcher().matches(relative));
+  }
+
+  private final class Walk extends RecursiveTask<List<Path>> {
+    private final Path base;
+    private final Path relative;
+    private final int depth;
+
+    /**
+     * @param depth how many levels of directories below this one to descend into
+     */
+    Walk(final Path base, final Path relative, final int depth) {
+      this.base = base;
+      this.relative = relative;
+      this.depth = depth;
+    }
+
+    @Override
+    protected List<Path> compute() {
+      final List<Path> found = new ArrayList<>();
+      final List<Walk> subdirectories = new ArrayList<>();
+      try {
+        final var children =
+            FileDiscovery.this.children(this.base, this.relative, this.depth > 1);
+        for (final var child : children) {
+          if (child.directory()) {
+            subdirectories.add(new Walk(this.base, child.relative(), this.depth - 1));
+          } else {
+            found.add(this.base.resolve(child.relative()));
+          }
+        }
+      } catch (final IOException exception) {
+        throw new UncheckedIOException(exception);
+      }
+      for (final var subdirectory : RecursiveTask.invokeAll(subdirectories)) {
+        found.addAll(subdirectory.join());
+      }
+      return found;
+    }
+  }
+
+  /**
+   * Lists the matching files and the directories to descend into within a directory, in the
+   * order of their paths. Entries deleted while listing are left out.
+   */
+  private List<Child> children(final Path base, final Path relative, final boolean descend)
+      throws IOException {
+    final List<Child> children = new ArrayList<>();
+    try (final var entries = Files.newDirectoryStream(base.resolve(relative))) {
+      for (final var entry : entries) {
+        final var relativeChild = relative.resolve(entry.getFileName());
+        if (this.isExcluded(relativeChild)) {
+          continue;
+        }
+        final BasicFileAttributes attributes;
+        try {
+          attributes =
+              Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (final NoSuchFileException exception) {
+          continue;
+        }
+        final Child child;
+        if (attributes.isDirectory()) {
+          if (!descend) {
+            continue;
+          }
+          child = new Child(relativeChild, true);
+        } else if ((attributes.isRegularFile()
+                || attributes.isSymbolicLink() && Files.isRegularFile(entry))
+            && this.isIncluded(relativeChild)) {
+          child = new Child(relativeChild, false);
+        } else {
+          continue;
+        }
+        children.add(child);
+      }
+    }
+    children.sort(Comparator.comparing(Child::sortKey));
+    return children;
+  }
+
+  private static Include include(final String pattern) {
+    final var segments = pattern.split("/", -1);
+    var root = Path.of("");
+    var literal = 0;
+    // the last segment is the file name, even without glob characters
+    while (literal < segments.length - 1 && !FileDiscovery.hasGlobCharacters(segments[literal])) {
+      if (!segments[literal].isEmpty() && !segments[literal].equals(".")) {
+        root = root.resolve(segments[literal]);
+      }
+      literal++;
+    }
+    return new Include(
+        FileDiscovery.matcher(pattern), root, FileDiscovery.maxDepth(pattern, literal));
+  }
+
+  /**
+   * Returns how many directory levels below the literal prefix a pattern can match, which is
+   * unlimited if the pattern contains {@code **} or a group spanning directories.
+   */
+  private static int maxDepth(final String pattern, final int literalSegments) {
+    if (pattern.contains("**")) {
+      return Integer.MAX_VALUE;
+    }
+    var inGroup = 0;
+    var separators = 0;
+    for (final var c : pattern.toCharArray()) {
+      switch (c) {
+        case '{', '[' -> inGroup++;
+        case '}', ']' -> inGroup--;
+        case '/' -> {
+          if (inGroup > 0) {
+            return Integer.MAX_VALUE;
+          }
+          separators++;
+        }
+        default -> {}
+      }
+    }
+    return separators + 1 - literalSegments;
+  }
+
+  private static boolean hasGlobCharacters(final String segment) {
+    return segment.chars().anyMatch(c -> GLOB_CHARACTERS.indexOf(c) >= 0);
+  }
+
+  private static PathMatcher matcher(final String pattern) {
+    return FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+  }
+}
@@ -1,151 +1,144 @@
 package com.sitepark.maven.plugins.pkl;
 
-import difflib.Delta;
-import difflib.DiffUtils;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.function.BiConsumer;
-import java.util.function.BinaryOperator;
-import java.util.function.Function;
-import java.util.function.Supplier;
-import java.util.stream.Collector;
-import java.util.stream.Stream;
+import java.util.function.Consumer;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.shared.utils.logging.MessageUtils;
 
+/**
+ * Logs the formatting of files. The differences of unformatted files are logged while they are
+ * found, up to the limits given, which count across all files logged by the same instance.
+ */
 final class FormatLogger {
   private final Log log;
+  private final DiffLimits limits;
+  private int hunks = 0;
+  private int lines = 0;
+
+  private static final int DIFF_CONTEXT_LINES = 1;
+
+  /**
+   * The number of hunks and lines of differences to log for each file and for all files. Values
+   * below zero stand for no limit.
+   */
+  static record DiffLimits(
+      int hunksPerFile, int linesPerFile, int hunksPerBuild, int linesPerBuild) {
+    static final DiffLimits NONE = new DiffLimits(-1, -1, -1, -1);
+  }
 
-  private static final class DiffCollector
-      implements Collector<Delta<String>, DiffCollector.Accumulator, Stream<String>> {
-    private final List<String> lines;
-
-    private static final int DIFF_CONTEXT_LINES = 1;
-
-    DiffCollector(final List<String> original) {
-      this.lines = original;
-    }
-
-    private static sealed interface Line
-        permits Line.Context, Line.Added, Line.Removed, Line.Elipse {
-      public static final Elipse ELIPSE = new Elipse();
-
-      record Context(int number, String content) implements Line {}
-
-      record Added(int number, String content) implements Line {}
-
-      record Removed(int number, String content) implements Line {}
-
-      record Elipse() implements Line {}
+  private final class DiffPrinter implements Consumer<LineDiff.Change> {
+    private final List<String> original;
+    private final List<String> revised;
+    private final Consumer<String> downstream;
+    private final String format;
+    private final String contextFormat;
+    private int lastContextLine = 0;
+    private int hunks = 0;
+    private int lines = 0;
+    private int omitted = 0;
+    private boolean truncated = false;
+
+    DiffPrinter(
+        final List<String> original,
+        final List<String> revised,
+        final Consumer<String> downstream) {
+      this.original = original;
+      this.revised = revised;
+      this.downstream = downstream;
+      this.format = "%" + digits(Math.max(original.size(), revised.size())) + "d ";
+      this.contextFormat = this.format + " %s";
     }
 
-    private final class Accumulator {
-      private Stream.Builder<Line> downstream;
-      private int lastContextLine = 0;
-      private int largestLineNumber = 0;
-
-      Accumulator() {
-        this.downstream = Stream.builder();
+    @Override
+    public void accept(final LineDiff.Change change) {
+      if (this.truncated
+          || exceeds(this.hunks, FormatLogger.this.limits.hunksPerFile())
+          || exceeds(FormatLogger.this.hunks, FormatLogger.this.limits.hunksPerBuild())
+          || this.linesExceeded()) {
+        this.omitted++;
+        return;
       }
-
-      public void accumulate(final Delta<String> delta) {
-        final var original = delta.getOriginal();
-        final var revised = delta.getRevised();
-        final var patchSize = original.getLines().size();
-        var position = original.getPosition();
-        var revision = revised.getPosition();
-        this.largestLineNumber = position + patchSize + DIFF_CONTEXT_LINES;
-        final var min = Math.max(this.lastContextLine, position - DIFF_CONTEXT_LINES);
-        final var max = Math.min(DiffCollector.this.lines.size(), this.largestLineNumber);
-        if (this.lastContextLine != 0 && min > this.lastContextLine) {
-          this.downstream.add(Line.ELIPSE);
-        }
-        for (var i = min; i < position; i++) {
-          this.downstream.add(new Line.Context(i + 1, DiffCollector.this.lines.get(i)));
-        }
-        for (final String line : original.getLines()) {
-          this.downstream.add(new Line.Removed(++position, line));
-        }
-        for (final String line : revised.getLines()) {
-          this.downstream.add(new Line.Added(++revision, line));
-        }
-        while (position < max) {
-          this.downstream.add(
-              new Line.Context(position + 1, DiffCollector.this.lines.get(position++)));
+      this.hunks++;
+      FormatLogger.this.hunks++;
+      final var position = change.originalStart();
+      final var end = change.originalEnd();
+      final var min = Math.max(this.lastContextLine, position - DIFF_CONTEXT_LINES);
+      final var max = Math.min(this.original.size(), end + DIFF_CONTEXT_LINES);
+      if (this.lastContextLine != 0 && min > this.lastContextLine && !this.print("...")) {
+        return;
+      }
+      for (var i = min; i < position; i++) {
+        if (!this.print(String.format(this.contextFormat, i + 1, this.original.get(i)))) {
+          return;
         }
-        this.lastContextLine = max;
       }
-
-      private Accumulator combine(final Accumulator other) {
-        throw new UnsupportedOperationException();
+      for (var i = position; i < end; i++) {
+        final var line =
+            MessageUtils.buffer()
+                .a(String.format(this.format, i + 1))
+                .failure('-')
+                .failure(this.original.get(i))
+                .build();
+        if (!this.print(line)) {
+          return;
+        }
       }
-
-      private Stream<String> finish() {
-        final var format = "%" + this.digits(this.largestLineNumber) + "d ";
-        final var contextFormat = format + " %s";
-        return this.downstream
-            .build()
-            .sequential()
-            .map(
-                e ->
-                    switch (e) {
-                      case Line.Context(final var number, final var content) ->
-                          String.format(contextFormat, number, content);
-                      case Line.Added(final var number, final var content) ->
-                          MessageUtils.buffer()
-                              .a(String.format(format, number))
-                              .success('+')
-                              .success(content)
-                              .build();
-                      case Line.Removed(final var number, final var content) ->
-                          MessageUtils.buffer()
-                              .a(String.format(format, number))
-                              .failure('-')
-                              .failure(content)
-                              .build();
-                      case Line.Elipse() -> "...";
-                    });
+      for (var i = change.revisedStart(); i < change.revisedEnd(); i++) {
+        final var line =
+            MessageUtils.buffer()
+                .a(String.format(this.format, i + 1))
+                .success('+')
+                .success(this.revised.get(i))
+                .build();
+        if (!this.print(line)) {
+          return;
+        }
       }
-
-      private int digits(final int number) {
-        return number < 100_000
-            ? number < 100 ? number < 10 ? 1 : 2 : number < 1_000 ? 3 : number < 10_000 ? 4 : 5
-            : number < 10_000_000
-                ? number < 1_000_000 ? 6 : 7
-                : number < 100_000_000 ? 8 : number < 1_000_000_000 ? 9 : 10;
+      for (var i = end; i < max; i++) {
+        if (!this.print(String.format(this.contextFormat, i + 1, this.original.get(i)))) {
+          return;
+        }
       }
+      this.lastContextLine = max;
     }
 
-    @Override
-    public Supplier<Accumulator> supplier() {
-      return Accumulator::new;
-    }
-
-    @Override
-    public BiConsumer<Accumulator, Delta<String>> accumulator() {
-      return Accumulator::accumulate;
-    }
-
-    @Override
-    public BinaryOperator<Accumulator> combiner() {
-      return Accumulator::combine;
+    private boolean print(final String line) {
+      if (this.linesExceeded()) {
+        // the rest of the hunk is cut off
+        this.truncated = true;
+        this.downstream.accept("...");
+        return false;
+      }
+      this.lines++;
+      FormatLogger.this.lines++;
+      this.downstream.accept(line);
+      return true;
     }
 
-    @Override
-    public Function<Accumulator, Stream<String>> finisher() {
-      return Accumulator::finish;
+    private boolean linesExceeded() {
+      return exceeds(this.lines, FormatLogger.this.limits.linesPerFile())
+          || exceeds(FormatLogger.this.lines, FormatLogger.this.limits.linesPerBuild());
     }
 
-    @Override
-    public Set<Characteristics> characteristics() {
-      return Set.of();
+    void finish() {
+      if (this.omitted > 0) {
+        this.downstream.accept(
+            "... "
+                + this.omitted
+                + (this.omitted == 1 ? " more hunk omitted" : " more hunks omitted"));
+      }
     }
   }
 
   public FormatLogger(final Log log) {
+    this(log, DiffLimits.NONE);
+  }
+
+  public FormatLogger(final Log log, final DiffLimits limits) {
     this.log = log;
+    this.limits = limits;
   }
 
   public void executionSkipped() {
@@ -154,19 +147,51 @@ final class FormatLogger {
 
   public void beginExecution() {}
 
+  public void remainingFilesSkipped(final int count) {
+    this.log.info("Skipped " + count + (count == 1 ? " remaining file" : " remaining files"));
+  }
+
+  public void upToDate(final Path file) {
+    this.log.debug("Skipping up-to-date " + file);
+  }
+
+  public void invalidFile(final Path file) {
+    this.log.error("Error in " + file);
+  }
+
   public void invalidFile(final Path file, final String original, final String formatted) {
     this.log.error("Error in " + file);
-    final var lines = Arrays.asList(original.split("\n"));
-    final var diff = DiffUtils.diff(lines, Arrays.asList(formatted.split("\n")));
-    diff.getDeltas().stream().collect(new DiffCollector(lines)).forEach(this.log::error);
+    this.diff(original, formatted, this.log::error);
     this.log.error("");
   }
 
+  public void formattedFile(final Path file) {
+    this.log.info("Formatted " + file);
+  }
+
   public void formattedFile(final Path file, final String original, final String formatted) {
     this.log.info("Formatted " + file);
-    final var lines = Arrays.asList(original.split("\n"));
-    final var diff = DiffUtils.diff(lines, Arrays.asList(formatted.split("\n")));
-    diff.getDeltas().stream().collect(new DiffCollector(lines)).forEach(this.log::info);
+    this.diff(original, formatted, this.log::info);
     this.log.info("");
   }
+
+  private void diff(final String original, final String formatted, final Consumer<String> out) {
+    final var lines = Arrays.asList(original.split("\n"));
+    final var revised = Arrays.asList(formatted.split("\n"));
+    final var printer = new DiffPrinter(lines, revised, out);
+    LineDiff.diff(lines, revised, printer);
+    printer.finish();
+  }
+
+  private static boolean exceeds(final int count, final int limit) {
+    return limit >= 0 && count >= limit;
+  }
+
+  private static int digits(final int number) {
+    return number < 100_000
+        ? number < 100 ? number < 10 ? 1 : 2 : number < 1_000 ? 3 : number < 10_000 ? 4 : 5
+        : number < 10_000_000
+            ? number < 1_000_000 ? 6 : 7
+            : number < 100_000_000 ? 8 : number < 1_000_000_000 ? 9 : 10;
+  }
 }
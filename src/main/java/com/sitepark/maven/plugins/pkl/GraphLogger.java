@@ -0,0 +1,50 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.net.URI;
+import java.nio.file.Path;
+import org.apache.maven.plugin.logging.Log;
+
+final class GraphLogger {
+  private final Log log;
+
+  private static final String INDENT = "  ";
+
+  public GraphLogger(final Log log) {
+    this.log = log;
+  }
+
+  public void executionSkipped() {
+    this.log.info("Import graph is skipped");
+  }
+
+  public void module(final Path file, final int imports, final int importedBy) {
+    this.log.info(
+        file
+            + " imports "
+            + GraphLogger.modules(imports)
+            + ", imported by "
+            + GraphLogger.modules(importedBy));
+  }
+
+  public void beginSharedModules() {
+    this.log.info("");
+    this.log.info("Modules imported by most others:");
+  }
+
+  public void sharedModule(final URI module, final int importedBy) {
+    this.log.info(INDENT + GraphLogger.display(module) + " (" + importedBy + ")");
+  }
+
+  public void writeGraph(final Path file) {
+    this.log.info("");
+    this.log.info("Writing " + file);
+  }
+
+  private static String modules(final int count) {
+    return count + (count == 1 ? " module" : " modules");
+  }
+
+  private static String display(final URI module) {
+    return "file".equals(module.getScheme()) ? Path.of(module).toString() : module.toString();
+  }
+}
@@ -0,0 +1,184 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+@Mojo(name = "graph", requiresDependencyResolution = ResolutionScope.TEST)
+public final class GraphMojo extends AbstractMojo {
+  private GraphLogger logger;
+
+  /**
+   * A globbed path, relative to ${pkl.directory} matching all pkl files to analyze.
+   */
+  @Parameter(required = true)
+  String files;
+
+  /**
+   * Globbed paths, relative to ${pkl.directory}, of files and directories to leave out. Excluded
+   * directories are not searched. They add to the default excludes, see ${useDefaultExcludes}.
+   */
+  @Parameter List<String> excludes = List.of();
+
+  /**
+   * Whether to leave out {@code .git}, {@code node_modules} and {@code target} directories in
+   * addition to ${excludes}.
+   */
+  @Parameter(property = "pkl.useDefaultExcludes", defaultValue = "true")
+  boolean useDefaultExcludes = true;
+
+  /**
+   * The base directory to search pkl files in via ${pkl.files}.
+   */
+  @Parameter(defaultValue = "${basedir}")
+  String directory;
+
+  /**
+   * A modulepath to use when executing.
+   */
+  @Parameter Set<String> modulepath;
+
+  /**
+   * Properties to use when executing.
+   */
+  @Parameter Map<String, String> properties = Map.of();
+
+  /**
+   * Environment variables to use when executing.
+   */
+  @Parameter Map<String, String> environmentVariables = Map.of();
+
+  /**
+   * The file to merge the import graph of the analyzed modules into.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/pkl/import-graph.properties")
+  String graphFile;
+
+  /**
+   * The number of modules imported by most others to list.
+   */
+  @Parameter(property = "pkl.graph.shared", defaultValue = "10")
+  int shared = 10;
+
+  /**
+   * The directory to cache downloaded packages in, shared by all builds using the same local
+   * repository.
+   */
+  @Parameter(
+      property = "pkl.moduleCacheDir",
+      defaultValue = "${settings.localRepository}/.cache/pkl")
+  String moduleCacheDir;
+
+  /**
+   * Whether to only use packages from the module cache and fail instead of downloading
+   * packages, remote modules or resources. Follows Maven's offline mode by default.
+   */
+  @Parameter(property = "pkl.offline", defaultValue = "${settings.offline}")
+  boolean offline;
+
+  /**
+   * Whether to reuse evaluators, and the modules they loaded, in later executions with the same
+   * modulepath, properties and environment variables within the same Maven session.
+   */
+  @Parameter(property = "pkl.reuseEvaluators", defaultValue = "true")
+  boolean reuseEvaluators;
+
+  /**
+   * The Maven session, to share evaluators among its executions.
+   */
+  @Parameter(defaultValue = "${session}", readonly = true)
+  Object session;
+
+  /**
+   * Whether to skip execution.
+   */
+  @Parameter boolean skip;
+
+  /**
+   * Exists only to be disabled by tests.
+   */
+  boolean color = true;
+
+  public GraphMojo() {}
+
+  public void execute() throws MojoFailureException, MojoExecutionException {
+    if (this.logger == null) {
+      this.logger = new GraphLogger(this.getLog());
+    }
+    if (this.skip) {
+      this.logger.executionSkipped();
+      return;
+    }
+    final List<Path> files;
+    try {
+      final var excludes = FileDiscovery.excludes(this.excludes, this.useDefaultExcludes);
+      files = new FileDiscovery(List.of(this.files), excludes).find(Path.of(this.directory));
+    } catch (final IOException exception) {
+      throw new MojoExecutionException("Failed to read pkl files", exception);
+    }
+    if (files.isEmpty()) {
+      throw new MojoFailureException("No files were analyzed!");
+    }
+    final var evaluators = SessionEvaluators.of(this.reuseEvaluators ? this.session : null);
+    final var evaluator = evaluators.acquire(this.evaluatorSettings());
+    final ImportGraph graph;
+    try {
+      graph = ImportGraph.analyze(evaluator.evaluator(), files);
+    } finally {
+      evaluators.release(evaluator);
+    }
+    final var dependents = graph.dependents();
+    for (final var file : files) {
+      final var module = file.toAbsolutePath().normalize().toUri();
+      this.logger.module(file, graph.imports(module).size(), dependents.getOrDefault(module, 0));
+    }
+    final var sharedModules = graph.mostShared(this.shared);
+    if (!sharedModules.isEmpty()) {
+      this.logger.beginSharedModules();
+      for (final var module : sharedModules) {
+        this.logger.sharedModule(module, dependents.get(module));
+      }
+    }
+    if (this.graphFile != null) {
+      final var graphFile = Path.of(this.graphFile);
+      this.logger.writeGraph(graphFile);
+      try {
+        ImportGraph.update(graphFile, graph);
+      } catch (final IOException exception) {
+        throw new MojoExecutionException("Failed to write " + graphFile, exception);
+      }
+    }
+  }
+
+  @Override
+  public void setLog(final Log log) {
+    super.setLog(log);
+    this.logger = new GraphLogger(log);
+  }
+
+  private final Set<Path> modulepathEntries() {
+    return this.modulepath != null
+        ? this.modulepath.stream().map(Path::of).collect(Collectors.toSet())
+        : Set.of();
+  }
+
+  private final EvaluatorSettings evaluatorSettings() {
+    return new EvaluatorSettings(
+        this.modulepathEntries(),
+        this.properties,
+        this.environmentVariables,
+        this.moduleCacheDir != null ? Path.of(this.moduleCacheDir) : null,
+        this.offline,
+        this.color);
+  }
+}
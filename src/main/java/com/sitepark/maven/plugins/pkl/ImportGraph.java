@@ -0,0 +1,219 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.pkl.core.Evaluator;
+import org.pkl.core.ModuleSource;
+import org.pkl.core.PObject;
+
+/**
+ * The modules importing, amending or extending each other, as determined by {@code pkl:analyze}.
+ *
+ * Imports are stored by the URIs they resolve to, so modulepath and package imports point to the
+ * files and archives that actually contain them.
+ *
+ * The graph is persisted as properties mapping each module to the modules it imports, one per
+ * line, so later builds can make use of it before analyzing the modules again.
+ */
+final class ImportGraph {
+  private final Map<URI, Set<URI>> imports;
+
+  private static final String COMMENT = "pkl-maven-plugin import graph, do not edit";
+
+  ImportGraph(final Map<URI, Set<URI>> imports) {
+    this.imports = imports;
+  }
+
+  /**
+   * Analyzes the given modules and all modules they transitively import.
+   */
+  public static ImportGraph analyze(final Evaluator evaluator, final Collection<Path> modules) {
+    if (modules.isEmpty()) {
+      return new ImportGraph(Map.of());
+    }
+    final var source =
+        modules.stream()
+            .map(module -> ImportGraph.quote(module.toAbsolutePath().normalize().toUri()))
+            .collect(
+                Collectors.joining(
+                    ", ", "import \"pkl:analyze\"\n\ngraph = analyze.importGraph(Set(", "))\n"));
+    final var graph = (PObject) evaluator.evaluateExpression(ModuleSource.text(source), "graph");
+    final var resolvedImports = (Map<?, ?>) graph.getProperty("resolvedImports");
+    final Map<URI, Set<URI>> imports = new HashMap<>();
+    for (final var entry : ((Map<?, ?>) graph.getProperty("imports")).entrySet()) {
+      final var moduleImports =
+          imports.computeIfAbsent(
+              ImportGraph.resolve(resolvedImports, entry.getKey()), uri -> new HashSet<>());
+      for (final Object value : (Collection<?>) entry.getValue()) {
+        final var uri = ((PObject) value).getProperty("uri");
+        moduleImports.add(ImportGraph.resolve(resolvedImports, uri));
+      }
+    }
+    return new ImportGraph(imports);
+  }
+
+  /**
+   * Reads a graph stored before. A missing or unreadable file results in an empty graph.
+   */
+  public static ImportGraph load(final Path file) {
+    final var properties = new Properties();
+    if (Files.isRegularFile(file)) {
+      try (final InputStream stream = Files.newInputStream(file)) {
+        properties.load(stream);
+      } catch (final IOException | IllegalArgumentException exception) {
+        properties.clear();
+      }
+    }
+    final Map<URI, Set<URI>> imports = new HashMap<>();
+    try {
+      for (final var module : properties.stringPropertyNames()) {
+        imports.put(
+            URI.create(module),
+            properties
+                .getProperty(module)
+                .lines()
+                .filter(line -> !line.isEmpty())
+                .map(URI::create)
+                .collect(Collectors.toSet()));
+      }
+    } catch (final IllegalArgumentException exception) {
+      return new ImportGraph(Map.of());
+    }
+    return new ImportGraph(imports);
+  }
+
+  public void store(final Path file) throws IOException {
+    final var parent = file.getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    final var properties = new Properties();
+    for (final var entry : this.imports.entrySet()) {
+      properties.setProperty(
+          entry.getKey().toString(),
+          entry.getValue().stream().map(URI::toString).sorted().collect(Collectors.joining("\n")));
+    }
+    try (final OutputStream stream = Files.newOutputStream(file)) {
+      properties.store(stream, COMMENT);
+    }
+  }
+
+  /**
+   * Merges the given graph into the one stored in the file.
+   */
+  public static void update(final Path file, final ImportGraph graph) throws IOException {
+    ImportGraph.load(file).merge(graph).store(file);
+  }
+
+  /**
+   * Returns a graph with the imports of this one, replaced by those of the given graph for the
+   * modules it contains. Local modules that no longer exist are left out.
+   */
+  public ImportGraph merge(final ImportGraph newer) {
+    final Map<URI, Set<URI>> imports = new HashMap<>(this.imports);
+    imports.putAll(newer.imports);
+    imports
+        .keySet()
+        .removeIf(module -> "file".equals(module.getScheme()) && !Files.exists(Path.of(module)));
+    return new ImportGraph(imports);
+  }
+
+  /**
+   * Returns all modules of the graph, whether analyzed or only imported.
+   */
+  public Set<URI> modules() {
+    final Set<URI> modules = new HashSet<>(this.imports.keySet());
+    this.imports.values().forEach(modules::addAll);
+    return modules;
+  }
+
+  /**
+   * Returns the modules the given module imports directly.
+   */
+  public Set<URI> imports(final URI module) {
+    return this.imports.getOrDefault(module, Set.of());
+  }
+
+  /**
+   * Returns the number of modules transitively importing each module imported at all.
+   */
+  public Map<URI, Integer> dependents() {
+    final Map<URI, Integer> dependents = new HashMap<>();
+    for (final var module : this.imports.keySet()) {
+      for (final var imported : this.closure(module)) {
+        if (!imported.equals(module)) {
+          dependents.merge(imported, 1, Integer::sum);
+        }
+      }
+    }
+    return dependents;
+  }
+
+  /**
+   * Returns up to {@code limit} modules imported by at least two others, the most imported first.
+   */
+  public List<URI> mostShared(final int limit) {
+    return this.dependents().entrySet().stream()
+        .filter(entry -> entry.getValue() > 1)
+        .sorted(
+            Map.Entry.<URI, Integer>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()))
+        .limit(limit)
+        .map(Map.Entry::getKey)
+        .toList();
+  }
+
+  /**
+   * Whether the module or any module it transitively imports is one of the given ones.
+   */
+  public boolean dependsOnAny(final URI module, final Collection<URI> modules) {
+    return this.closure(module).stream().anyMatch(modules::contains);
+  }
+
+  /**
+   * Returns the given module and all modules it transitively imports.
+   */
+  public Set<URI> closure(final URI module) {
+    final Set<URI> closure = new LinkedHashSet<>();
+    final var pending = new ArrayDeque<URI>();
+    pending.add(module);
+    while (!pending.isEmpty()) {
+      final var current = pending.poll();
+      if (closure.add(current)) {
+        pending.addAll(this.imports.getOrDefault(current, Set.of()));
+      }
+    }
+    return closure;
+  }
+
+  private static URI resolve(final Map<?, ?> resolvedImports, final Object uri) {
+    final var resolved = resolvedImports.get(uri);
+    return URI.create(String.valueOf(resolved != null ? resolved : uri));
+  }
+
+  private static String quote(final URI uri) {
+    return ImportGraph.quote(uri.toString());
+  }
+
+  /**
+   * Quotes the text as a Pkl string literal.
+   */
+  static String quote(final String text) {
+    return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+  }
+}
@@ -0,0 +1,217 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Computes the lines changed between two texts with the linear space variant of Myers' algorithm,
+ * handing out the changes in order as soon as they are found.
+ *
+ * Lines common to the start and end of a range are skipped before searching the middle snake,
+ * which leaves little work for a formatted file with few changes. Ranges too different to find
+ * their middle snake within {@link #MAX_COST} edits are split at the furthest point the forward
+ * search reached instead, which keeps the time linear at the cost of a possibly longer diff.
+ */
+final class LineDiff {
+  private final List<String> original;
+  private final List<String> revised;
+  // compared before the lines, which mostly differ in their hash codes
+  private final int[] originalHashes;
+  private final int[] revisedHashes;
+  private final Consumer<Change> changes;
+  private Change pending;
+
+  // bounds the quadratic part of the search for very different ranges
+  private static final int MAX_COST = 64;
+
+  /**
+   * Lines of the original text replaced by lines of the revised text, either of which may be
+   * empty. The indexes start at zero and the ends are exclusive.
+   */
+  static record Change(int originalStart, int originalEnd, int revisedStart, int revisedEnd) {}
+
+  private static record Split(int original, int revised) {}
+
+  private LineDiff(
+      final List<String> original, final List<String> revised, final Consumer<Change> changes) {
+    this.original = original;
+    this.revised = revised;
+    this.originalHashes = LineDiff.hashes(original);
+    this.revisedHashes = LineDiff.hashes(revised);
+    this.changes = changes;
+  }
+
+  /**
+   * Hands the changes turning the original into the revised lines to the consumer, in the order
+   * of the lines.
+   */
+  public static void diff(
+      final List<String> original, final List<String> revised, final Consumer<Change> changes) {
+    final var diff = new LineDiff(original, revised, changes);
+    diff.compare(0, original.size(), 0, revised.size());
+    if (diff.pending != null) {
+      changes.accept(diff.pending);
+    }
+  }
+
+  private static int[] hashes(final List<String> lines) {
+    final var hashes = new int[lines.size()];
+    for (int i = 0; i < hashes.length; i++) {
+      hashes[i] = lines.get(i).hashCode();
+    }
+    return hashes;
+  }
+
+  private boolean equal(final int original, final int revised) {
+    return this.originalHashes[original] == this.revisedHashes[revised]
+        && this.original.get(original).equals(this.revised.get(revised));
+  }
+
+  private void compare(int originalStart, int originalEnd, int revisedStart, int revisedEnd) {
+    // the second half is compared in the loop, so long diffs do not grow the stack
+    while (true) {
+      while (originalStart < originalEnd
+          && revisedStart < revisedEnd
+          && this.equal(originalStart, revisedStart)) {
+        originalStart++;
+        revisedStart++;
+      }
+      while (originalStart < originalEnd
+          && revisedStart < revisedEnd
+          && this.equal(originalEnd - 1, revisedEnd - 1)) {
+        originalEnd--;
+        revisedEnd--;
+      }
+      if (originalStart == originalEnd || revisedStart == revisedEnd) {
+        if (originalStart < originalEnd || revisedStart < revisedEnd) {
+          this.change(new Change(originalStart, originalEnd, revisedStart, revisedEnd));
+        }
+        return;
+      }
+      final var split = this.middleSnake(originalStart, originalEnd, revisedStart, revisedEnd);
+      if (split.original() == originalStart && split.revised() == revisedStart
+          || split.original() == originalEnd && split.revised() == revisedEnd) {
+        this.change(new Change(originalStart, originalEnd, revisedStart, revisedEnd));
+        return;
+      }
+      this.compare(originalStart, split.original(), revisedStart, split.revised());
+      originalStart = split.original();
+      revisedStart = split.revised();
+    }
+  }
+
+  /**
+   * Searches forward from the start and backward from the end of the ranges at once, until both
+   * searches meet on a point of an optimal path.
+   *
+   * @return the point to split the ranges at
+   */
+  private Split middleSnake(
+      final int originalStart,
+      final int originalEnd,
+      final int revisedStart,
+      final int revisedEnd) {
+    final var n = originalEnd - originalStart;
+    final var m = revisedEnd - revisedStart;
+    final var maxD = Math.min((n + m + 1) / 2, MAX_COST);
+    final var offset = maxD + 1;
+    final var forward = new int[2 * offset + 1];
+    final var backward = new int[2 * offset + 1];
+    Arrays.fill(forward, -1);
+    Arrays.fill(backward, -1);
+    forward[offset + 1] = 0;
+    backward[offset + 1] = 0;
+    final var delta = n - m;
+    final var odd = (delta & 1) != 0;
+    // diagonals leaving the ranges are not explored further
+    int forwardStart = 0;
+    int forwardEnd = 0;
+    int backwardStart = 0;
+    int backwardEnd = 0;
+    for (int d = 0; d < maxD; d++) {
+      for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+        int x =
+            k == -d || k != d && forward[offset + k - 1] < forward[offset + k + 1]
+                ? forward[offset + k + 1]
+                : forward[offset + k - 1] + 1;
+        int y = x - k;
+        while (x < n && y < m && this.equal(originalStart + x, revisedStart + y)) {
+          x++;
+          y++;
+        }
+        forward[offset + k] = x;
+        if (x > n) {
+          forwardEnd += 2;
+        } else if (y > m) {
+          forwardStart += 2;
+        } else if (odd) {
+          final var backwardK = delta - k;
+          if (backwardK >= -offset
+              && backwardK <= offset
+              && backward[offset + backwardK] != -1
+              && x >= n - backward[offset + backwardK]) {
+            return new Split(originalStart + x, revisedStart + y);
+          }
+        }
+      }
+      for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+        int x =
+            k == -d || k != d && backward[offset + k - 1] < backward[offset + k + 1]
+                ? backward[offset + k + 1]
+                : backward[offset + k - 1] + 1;
+        int y = x - k;
+        while (x < n && y < m && this.equal(originalEnd - x - 1, revisedEnd - y - 1)) {
+          x++;
+          y++;
+        }
+        backward[offset + k] = x;
+        if (x > n) {
+          backwardEnd += 2;
+        } else if (y > m) {
+          backwardStart += 2;
+        } else if (!odd) {
+          final var forwardK = delta - k;
+          if (forwardK >= -offset && forwardK <= offset && forward[offset + forwardK] != -1) {
+            final var forwardX = forward[offset + forwardK];
+            if (forwardX >= n - x) {
+              return new Split(originalStart + forwardX, revisedStart + forwardX - forwardK);
+            }
+          }
+        }
+      }
+    }
+    // too expensive, continue from the point of the forward search closest to the end
+    var best = new Split(originalStart, revisedStart);
+    var bestDistance = 0;
+    for (int k = -maxD; k <= maxD; k++) {
+      final var x = forward[offset + k];
+      final var y = x - k;
+      if (x >= 0 && x <= n && y >= 0 && y <= m && x + y > bestDistance) {
+        best = new Split(originalStart + x, revisedStart + y);
+        bestDistance = x + y;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Joins adjacent changes found in different ranges before handing them out.
+   */
+  private void change(final Change change) {
+    if (this.pending == null) {
+      this.pending = change;
+    } else if (this.pending.originalEnd() == change.originalStart()
+        && this.pending.revisedEnd() == change.revisedStart()) {
+      this.pending =
+          new Change(
+              this.pending.originalStart(),
+              change.originalEnd(),
+              this.pending.revisedStart(),
+              change.revisedEnd());
+    } else {
+      this.changes.accept(this.pending);
+      this.pending = change;
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import org.pkl.core.http.HttpClient;
+
+/**
+ * Refuses every request, so packages, remote modules and resources can only be served from the
+ * module cache.
+ */
+final class OfflineHttpClient implements HttpClient {
+
+  @Override
+  public <T> HttpResponse<T> send(
+      final HttpRequest request, final HttpResponse.BodyHandler<T> responseBodyHandler)
+      throws IOException {
+    throw new IOException(
+        "Cannot request " + request.uri() + " in offline mode, it is not in the module cache");
+  }
+
+  @Override
+  public void close() {}
+}
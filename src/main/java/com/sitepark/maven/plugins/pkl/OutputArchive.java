@@ -0,0 +1,171 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Writes output files as entries of a zip or jar archive, instead of writing each to disk. All
+ * entries get the same modification time, and are added in the order they are handed over, so
+ * evaluating the same modules results in the same archive.
+ *
+ * The entries are written to a temporary file next to the archive, which only replaces the archive
+ * once it is {@link #commit() committed}. Closing an archive that was not committed deletes the
+ * temporary file, so a failed build leaves the previous archive in place.
+ *
+ * Instances must not be shared between threads.
+ */
+final class OutputArchive implements AutoCloseable {
+  private final Path file;
+  private final Path temporary;
+  private final ZipOutputStream zip;
+  private final LocalDateTime timestamp;
+  private final TextFiles text;
+  private int entries;
+  private boolean committed;
+
+  /** The earliest time a zip entry can have, used if no timestamp is configured. */
+  static final Instant DEFAULT_TIMESTAMP = Instant.parse("1980-01-01T00:00:00Z");
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * @param level the compression level, from 0 (none) to 9 (best)
+   */
+  OutputArchive(final Path file, final int level, final Instant timestamp)
+      throws MojoExecutionException {
+    this.file = file;
+    // the local time of UTC, so the archive does not depend on the time zone of the build
+    this.timestamp = LocalDateTime.ofInstant(timestamp, ZoneOffset.UTC);
+    this.text = new TextFiles();
+    Path temporary = null;
+    try {
+      final var parent = file.toAbsolutePath().getParent();
+      Files.createDirectories(parent);
+      temporary = Files.createTempFile(parent, file.getFileName() + ".", ".tmp");
+      this.zip =
+          new ZipOutputStream(
+              new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE));
+      this.zip.setLevel(level);
+    } catch (final IOException | IllegalArgumentException exception) {
+      OutputArchive.delete(temporary);
+      throw new MojoExecutionException("Failed to write " + file, exception);
+    }
+    this.temporary = temporary;
+  }
+
+  /**
+   * Parses the modification time of the entries, either an ISO 8601 date-time or the seconds
+   * since the epoch, like {@code project.build.outputTimestamp}. Missing values, and values of a
+   * single character used to disable reproducible builds, result in the default timestamp.
+   */
+  static Optional<Instant> timestamp(final String value) {
+    if (value == null || value.trim().length() < 2) {
+      return Optional.of(DEFAULT_TIMESTAMP);
+    }
+    try {
+      return Optional.of(
+          value.trim().chars().allMatch(Character::isDigit)
+              ? Instant.ofEpochSecond(Long.parseLong(value.trim()))
+              : OffsetDateTime.parse(value.trim()).toInstant());
+    } catch (final NumberFormatException | DateTimeParseException exception) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Returns the name of the entry of an output file, or nothing if it lies outside the archive.
+   */
+  static Optional<String> entryName(final String outputFile) {
+    final var path = Path.of(outputFile).normalize();
+    if (path.isAbsolute() || path.startsWith("..") || path.toString().isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(path.toString().replace(path.getFileSystem().getSeparator(), "/"));
+  }
+
+  public Path file() {
+    return this.file;
+  }
+
+  public int entries() {
+    return this.entries;
+  }
+
+  public void add(final String name, final OutputContent content) throws MojoExecutionException {
+    final var entry = new ZipEntry(name);
+    entry.setTimeLocal(this.timestamp);
+    try {
+      this.zip.putNextEntry(entry);
+      switch (content) {
+        case OutputContent.Text(final var text) -> this.text.write(this.zip, text);
+        case OutputContent.Binary(final var bytes) -> this.zip.write(bytes);
+      }
+      this.zip.closeEntry();
+    } catch (final IOException exception) {
+      throw new MojoExecutionException("Failed to write " + name + " to " + this.file, exception);
+    }
+    this.entries++;
+  }
+
+  /**
+   * Finishes the archive and replaces the previous one with it, atomically where the file system
+   * supports it.
+   */
+  public void commit() throws MojoExecutionException {
+    try {
+      this.zip.close();
+      try {
+        Files.move(
+            this.temporary,
+            this.file,
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (final AtomicMoveNotSupportedException exception) {
+        Files.move(this.temporary, this.file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (final IOException exception) {
+      throw new MojoExecutionException("Failed to write " + this.file, exception);
+    }
+    this.committed = true;
+  }
+
+  /**
+   * Discards the archive unless it was committed.
+   */
+  @Override
+  public void close() {
+    if (this.committed) {
+      return;
+    }
+    try {
+      this.zip.close();
+    } catch (final IOException exception) {
+      // discarded anyway
+    }
+    OutputArchive.delete(this.temporary);
+  }
+
+  private static void delete(final Path file) {
+    if (file == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(file);
+    } catch (final IOException exception) {
+      // a leftover temporary file does no harm
+    }
+  }
+}
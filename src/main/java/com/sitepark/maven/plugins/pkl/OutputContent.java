@@ -0,0 +1,29 @@
+package com.sitepark.maven.plugins.pkl;
+
+/**
+ * The content of an output file, either text that is encoded as UTF-8 while it is written, or
+ * bytes rendered by a bytes renderer.
+ */
+sealed interface OutputContent permits OutputContent.Text, OutputContent.Binary {
+
+  record Text(String text) implements OutputContent {
+
+    @Override
+    public long size() {
+      return TextFiles.encodedLength(this.text);
+    }
+  }
+
+  record Binary(byte[] bytes) implements OutputContent {
+
+    @Override
+    public long size() {
+      return this.bytes.length;
+    }
+  }
+
+  /**
+   * The number of bytes the content takes in a file.
+   */
+  long size();
+}
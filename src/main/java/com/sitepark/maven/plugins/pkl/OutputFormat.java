@@ -0,0 +1,109 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A format to render the output value of every module to, configured as
+ *
+ * <pre>
+ * &lt;outputFormat&gt;
+ *   &lt;format&gt;yaml&lt;/format&gt;
+ *   &lt;fileName&gt;config/%{moduleName}.yaml&lt;/fileName&gt;
+ * &lt;/outputFormat&gt;
+ * </pre>
+ */
+public final class OutputFormat {
+
+  /**
+   * One of json, jsonnet, pcf, plist, properties, textproto, xml, yaml or pklBinary.
+   */
+  String format;
+
+  /**
+   * The path of the file relative to the output, in which {@code %{moduleName}} is replaced by
+   * the name of the module file without its extension and {@code %{moduleDir}} by the directory
+   * of the module relative to the searched directory. Defaults to {@code
+   * %{moduleDir}/%{moduleName}.<extension of the format>}.
+   */
+  String fileName;
+
+  /**
+   * The Pkl module declaring the renderer if it is not part of pkl:base, the expression creating
+   * the renderer and the extension of the rendered files.
+   */
+  static record Renderer(Optional<String> module, String expression, String extension) {
+
+    private Renderer(final String expression, final String extension) {
+      this(Optional.empty(), expression, extension);
+    }
+
+    private Renderer(final String module, final String expression, final String extension) {
+      this(Optional.of(module), expression, extension);
+    }
+
+    boolean isBinary() {
+      return this.module.filter("pkl:pklbinary"::equals).isPresent();
+    }
+  }
+
+  private static final Map<String, Renderer> RENDERERS =
+      Map.of(
+          "json", new Renderer("new JsonRenderer {}", "json"),
+          "jsonnet", new Renderer("pkl:jsonnet", "new jsonnet.Renderer {}", "jsonnet"),
+          "pcf", new Renderer("new PcfRenderer {}", "pcf"),
+          "plist", new Renderer("new PListRenderer {}", "plist"),
+          "properties", new Renderer("new PropertiesRenderer {}", "properties"),
+          "textproto", new Renderer("pkl:protobuf", "new protobuf.Renderer {}", "textproto"),
+          "xml", new Renderer("pkl:xml", "new xml.Renderer {}", "xml"),
+          "yaml", new Renderer("new YamlRenderer {}", "yaml"),
+          "pklBinary", new Renderer("pkl:pklbinary", "new pklbinary.Renderer {}", "pklbin"));
+
+  public OutputFormat() {}
+
+  OutputFormat(final String format, final String fileName) {
+    this.format = format;
+    this.fileName = fileName;
+  }
+
+  /**
+   * Returns the renderer of the format, if it is known.
+   */
+  Optional<Renderer> renderer() {
+    return Optional.ofNullable(this.format).map(RENDERERS::get);
+  }
+
+  /**
+   * Returns the path of the file to render the module to, relative to the output.
+   */
+  String fileName(final Path directory, final Path module) {
+    final var moduleFile = module.getFileName().toString();
+    final var moduleName =
+        moduleFile.endsWith(".pkl")
+            ? moduleFile.substring(0, moduleFile.length() - ".pkl".length())
+            : moduleFile;
+    final var moduleDir =
+        directory
+            .toAbsolutePath()
+            .normalize()
+            .relativize(module.toAbsolutePath().normalize().getParent())
+            .toString();
+    final var pattern =
+        this.fileName != null
+            ? this.fileName
+            : "%{moduleDir}/%{moduleName}." + this.renderer().orElseThrow().extension();
+    final var path =
+        Path.of(
+                pattern
+                    .replace("%{moduleDir}", moduleDir.isEmpty() ? "." : moduleDir)
+                    .replace("%{moduleName}", moduleName))
+            .normalize();
+    return path.toString().replace(path.getFileSystem().getSeparator(), "/");
+  }
+
+  @Override
+  public String toString() {
+    return this.format + ":" + this.fileName;
+  }
+}
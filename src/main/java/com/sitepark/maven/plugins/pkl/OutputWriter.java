@@ -0,0 +1,161 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Writes output files on virtual threads, so evaluating the next module does not wait for the
+ * output of the previous one to be written. At most a fixed number of files are pending at once,
+ * beyond which handing over another one blocks.
+ *
+ * Directories are created once per writer, and the buffers of {@link TextFiles} are reused among
+ * the writes.
+ */
+final class OutputWriter implements AutoCloseable {
+  private final boolean overwrite;
+  private final boolean writeIfChanged;
+  private final ExecutorService executor;
+  private final Semaphore pending;
+  private final Set<Path> directories;
+  private final Queue<TextFiles> textFiles;
+
+  /**
+   * What happened to an output file.
+   */
+  enum Outcome {
+    WRITTEN,
+    // the file already had the content and was left untouched
+    UNCHANGED,
+    // the file existed and was not to be overwritten
+    SKIPPED
+  }
+
+  /**
+   * An output file handed over to be written.
+   */
+  static record Write(Path file, Future<Outcome> outcome) {
+
+    boolean isDone() {
+      return this.outcome.isDone();
+    }
+
+    /**
+     * Waits for the file to be written.
+     */
+    Outcome await() throws MojoExecutionException {
+      try {
+        return this.outcome.get();
+      } catch (final InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new MojoExecutionException("Interrupted while writing " + this.file, exception);
+      } catch (final ExecutionException exception) {
+        switch (exception.getCause()) {
+          case final RuntimeException cause -> throw cause;
+          case final Error cause -> throw cause;
+          case final Throwable cause ->
+              throw new MojoExecutionException("Failed to write " + this.file, cause);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param capacity the number of files that may be pending at once
+   */
+  OutputWriter(final boolean overwrite, final boolean writeIfChanged, final int capacity) {
+    this.overwrite = overwrite;
+    this.writeIfChanged = writeIfChanged;
+    this.executor = Executors.newVirtualThreadPerTaskExecutor();
+    this.pending = new Semaphore(capacity);
+    this.directories = ConcurrentHashMap.newKeySet();
+    this.textFiles = new ConcurrentLinkedQueue<>();
+  }
+
+  /**
+   * Hands the content over to be written to the file, waiting while too many files are pending.
+   */
+  public Write write(final Path file, final OutputContent content)
+      throws MojoExecutionException {
+    try {
+      this.pending.acquire();
+    } catch (final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while waiting to write " + file, exception);
+    }
+    try {
+      return new Write(
+          file,
+          this.executor.submit(
+              () -> {
+                try {
+                  return this.writeNow(file, content);
+                } finally {
+                  this.pending.release();
+                }
+              }));
+    } catch (final RuntimeException exception) {
+      this.pending.release();
+      throw exception;
+    }
+  }
+
+  /**
+   * Waits for all files handed over to be written.
+   */
+  @Override
+  public void close() {
+    this.executor.close();
+  }
+
+  private Outcome writeNow(final Path file, final OutputContent content) throws IOException {
+    if (!this.overwrite && Files.exists(file)) {
+      return Outcome.SKIPPED;
+    }
+    final var files = this.textFiles();
+    try {
+      if (this.writeIfChanged && OutputWriter.hasContent(files, file, content)) {
+        return Outcome.UNCHANGED;
+      }
+      final var parent = file.getParent();
+      if (parent != null && !this.directories.contains(parent)) {
+        Files.createDirectories(parent);
+        this.directories.add(parent);
+      }
+      switch (content) {
+        case OutputContent.Text(final var text) -> files.write(file, text);
+        case OutputContent.Binary(final var bytes) -> Files.write(file, bytes);
+      }
+      return Outcome.WRITTEN;
+    } finally {
+      this.textFiles.add(files);
+    }
+  }
+
+  private static boolean hasContent(
+      final TextFiles files, final Path file, final OutputContent content) throws IOException {
+    return switch (content) {
+      case OutputContent.Text(final var text) -> files.hasContent(file, text);
+      case OutputContent.Binary(final var bytes) ->
+          Files.isRegularFile(file)
+              && Files.size(file) == bytes.length
+              && Arrays.equals(Files.readAllBytes(file), bytes);
+    };
+  }
+
+  private TextFiles textFiles() {
+    final var files = this.textFiles.poll();
+    return files != null ? files : new TextFiles();
+  }
+}
@@ -0,0 +1,113 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.lang.ref.Cleaner;
+import java.lang.ref.WeakReference;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps idle evaluators for the executions of one Maven session, so executions of different goals
+ * and reactor modules with the same settings don't pay for the startup of pkl again and reuse the
+ * modules the evaluators already loaded.
+ *
+ * The plugin's classes, and with them the current instance, outlive a single execution. The idle
+ * evaluators of a session are closed once the session is garbage collected, an execution of
+ * another session asks for evaluators, or the JVM shuts down, whichever comes first. At most
+ * {@link #MAX_IDLE} evaluators are kept per settings, surplus ones are closed on release.
+ */
+final class SessionEvaluators {
+  /** The number of idle evaluators kept per settings, enough for one per processor. */
+  static final int MAX_IDLE = Runtime.getRuntime().availableProcessors();
+
+  private static final Cleaner CLEANER = Cleaner.create();
+
+  private final WeakReference<Object> session;
+  private final ConcurrentMap<EvaluatorSettings, Deque<SharedEvaluator>> idle;
+
+  private static SessionEvaluators current;
+
+  static {
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  synchronized (SessionEvaluators.class) {
+                    if (current != null) {
+                      current.close();
+                    }
+                  }
+                },
+                "pkl-evaluators-shutdown"));
+  }
+
+  private SessionEvaluators(final Object session) {
+    this.session = new WeakReference<>(session);
+    this.idle = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the evaluators of the given session. Without a session, evaluators are not shared and
+   * closed on release.
+   */
+  public static synchronized SessionEvaluators of(final Object session) {
+    if (session == null) {
+      return new SessionEvaluators(null);
+    }
+    if (current == null || current.session.get() != session) {
+      if (current != null) {
+        current.close();
+      }
+      current = new SessionEvaluators(session);
+      CLEANER.register(session, current::close);
+    }
+    return current;
+  }
+
+  /**
+   * Returns an idle evaluator with the given settings or creates a new one. Evaluators that may
+   * have cached files modified since are closed instead of being reused.
+   */
+  public SharedEvaluator acquire(final EvaluatorSettings settings) {
+    final var evaluators = this.idle.get(settings);
+    if (evaluators != null) {
+      SharedEvaluator evaluator;
+      while ((evaluator = evaluators.pollFirst()) != null) {
+        if (!evaluator.isStale()) {
+          return evaluator;
+        }
+        evaluator.close();
+      }
+    }
+    return settings.create();
+  }
+
+  /**
+   * Hands an evaluator acquired before back for later executions, or closes it if enough
+   * evaluators with its settings are idle already.
+   */
+  public synchronized void release(final SharedEvaluator evaluator) {
+    if (this.session.get() == null) {
+      evaluator.close();
+      return;
+    }
+    final var evaluators =
+        this.idle.computeIfAbsent(evaluator.settings(), settings -> new ConcurrentLinkedDeque<>());
+    if (evaluators.size() >= MAX_IDLE) {
+      evaluator.close();
+      return;
+    }
+    evaluators.addFirst(evaluator);
+  }
+
+  private synchronized void close() {
+    this.session.clear();
+    for (final var evaluators : this.idle.values()) {
+      SharedEvaluator evaluator;
+      while ((evaluator = evaluators.pollFirst()) != null) {
+        evaluator.close();
+      }
+    }
+  }
+}
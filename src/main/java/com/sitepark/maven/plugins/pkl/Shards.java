@@ -0,0 +1,74 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Partitions items among shards, so that every item is selected by exactly one shard, and by the
+ * same one on every node given the same items and weights.
+ *
+ * Items are assigned heaviest first, each to the shard with the least weight so far, or with the
+ * fewest items among equally loaded shards. Items without a known weight count as the average of
+ * the known ones, which assigns items in turns if no weight is known at all.
+ */
+final class Shards {
+
+  private Shards() {}
+
+  /**
+   * Returns the items of the shard with the given index, in their original order.
+   *
+   * @param index the shard to select, starting at 1
+   * @param count the number of shards
+   */
+  public static <T> List<T> select(
+      final List<T> items,
+      final Function<? super T, OptionalDouble> weight,
+      final int index,
+      final int count) {
+    if (count < 1 || index < 1 || index > count) {
+      throw new IllegalArgumentException("Shard " + index + " of " + count + " does not exist");
+    }
+    final var known = items.stream().map(weight).toList();
+    final var average =
+        known.stream()
+            .filter(OptionalDouble::isPresent)
+            .mapToDouble(OptionalDouble::getAsDouble)
+            .average()
+            .orElse(1);
+    final var weights =
+        known.stream().mapToDouble(value -> Math.max(value.orElse(average), 0)).toArray();
+    // stable, so items of equal weight keep their order
+    final var order =
+        IntStream.range(0, items.size())
+            .boxed()
+            .sorted(Comparator.comparingDouble((final Integer item) -> weights[item]).reversed())
+            .toList();
+    final var loads = new double[count];
+    final var sizes = new int[count];
+    final var selected = new boolean[items.size()];
+    for (final var item : order) {
+      var lightest = 0;
+      for (int shard = 1; shard < count; shard++) {
+        if (loads[shard] < loads[lightest]
+            || loads[shard] == loads[lightest] && sizes[shard] < sizes[lightest]) {
+          lightest = shard;
+        }
+      }
+      loads[lightest] += weights[item];
+      sizes[lightest]++;
+      selected[item] = lightest == index - 1;
+    }
+    final List<T> shard = new ArrayList<>();
+    for (int item = 0; item < items.size(); item++) {
+      if (selected[item]) {
+        shard.add(items.get(item));
+      }
+    }
+    return shard;
+  }
+}
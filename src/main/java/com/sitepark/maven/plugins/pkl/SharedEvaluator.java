@@ -0,0 +1,78 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.net.URI;
+import java.util.Collection;
+import org.pkl.core.Evaluator;
+import org.pkl.core.ModuleSource;
+import org.pkl.core.module.ModulePathResolver;
+
+/**
+ * An evaluator that may be used by several executions one after another, together with the
+ * resources it holds and the modules and resources it read so far.
+ */
+final class SharedEvaluator {
+  private final EvaluatorSettings settings;
+  private final ModulePathResolver modulePathResolver;
+  private final Evaluator evaluator;
+  private final DependencyRecorder recorder;
+
+  private static final String WARM_UP_MODULE = "warmUp = true\n";
+
+  SharedEvaluator(
+      final EvaluatorSettings settings,
+      final ModulePathResolver modulePathResolver,
+      final Evaluator evaluator,
+      final DependencyRecorder recorder) {
+    this.settings = settings;
+    this.modulePathResolver = modulePathResolver;
+    this.evaluator = evaluator;
+    this.recorder = recorder;
+  }
+
+  public EvaluatorSettings settings() {
+    return this.settings;
+  }
+
+  public Evaluator evaluator() {
+    return this.evaluator;
+  }
+
+  public DependencyRecorder recorder() {
+    return this.recorder;
+  }
+
+  /**
+   * Initializes the language runtime and loads the standard library by evaluating a trivial
+   * module, which otherwise happens during the first real evaluation.
+   */
+  public void warmUp() {
+    this.evaluator.evaluateOutputText(ModuleSource.text(WARM_UP_MODULE));
+  }
+
+  /**
+   * Loads the given modules into the module cache without evaluating their members. Modules that
+   * fail to load are left for the evaluations needing them to report.
+   */
+  public void load(final Collection<URI> modules) {
+    for (final var module : modules) {
+      try {
+        this.evaluator.evaluateExpression(ModuleSource.uri(module), "true");
+      } catch (final RuntimeException exception) {
+        // reported when evaluating a module importing it
+      }
+    }
+  }
+
+  /**
+   * Whether any module or resource read by the evaluator changed since, so the evaluator may have
+   * cached outdated content.
+   */
+  public boolean isStale() {
+    return this.recorder.isChanged();
+  }
+
+  public void close() {
+    this.evaluator.close();
+    this.modulePathResolver.close();
+  }
+}
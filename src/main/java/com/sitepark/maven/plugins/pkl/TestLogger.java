@@ -37,6 +37,24 @@ final class TestLogger {
     this.log.info("-------------------------------------------------------");
   }
 
+  public void shard(final int index, final int count, final int selected, final int total) {
+    this.log.info(
+        String.format(
+            "Running shard %d of %d with %d of %d test modules", index, count, selected, total));
+  }
+
+  public void shardsByCount(final String timingsFile) {
+    this.log.warn(
+        timingsFile != null
+            ? "No timings in " + timingsFile + ", shards are split by the number of test modules"
+            : "shardTimingsFile is not set, shards are split by the number of test modules");
+  }
+
+  public void affectedTests(final int affected, final int total) {
+    this.log.info(
+        "Running " + affected + " of " + total + " test modules affected by the changed files");
+  }
+
   public void runTest(final String test) {
     this.log.info("Running " + test);
   }
@@ -56,6 +74,17 @@ final class TestLogger {
     }
   }
 
+  public void upToDate(final String scope, final TestStats stats) {
+    final var testScope = TestScope.fromString(scope);
+    this.log.info(
+        MessageUtils.buffer()
+            .success("Tests run: " + stats.testsRun())
+            .a(", Failures: 0, Errors: 0, Skipped: 0, up to date in ")
+            .a(testScope.namespace())
+            .strong(testScope.module())
+            .build());
+  }
+
   public void summary(final TestStats stats) {
     this.log.info("");
     this.log.info("Results:");
@@ -1,12 +1,18 @@
 package com.sitepark.maven.plugins.pkl;
 
 import java.io.IOException;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalDouble;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import org.apache.maven.plugin.AbstractMojo;
@@ -17,15 +23,9 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
-import org.pkl.core.Evaluator;
-import org.pkl.core.EvaluatorBuilder;
 import org.pkl.core.ModuleSource;
-import org.pkl.core.SecurityManagers;
-import org.pkl.core.StackFrameTransformers;
+import org.pkl.core.Release;
 import org.pkl.core.TestResults;
-import org.pkl.core.module.ModuleKeyFactories;
-import org.pkl.core.module.ModulePathResolver;
-import org.pkl.core.resource.ResourceReaders;
 
 @Mojo(
     name = "test",
@@ -41,6 +41,19 @@ public sealed class TestMojo extends AbstractMojo permits OverwriteMojo {
   @Parameter(required = true)
   String files;
 
+  /**
+   * Globbed paths, relative to ${pkl.directory}, of files and directories to leave out. Excluded
+   * directories are not searched. They add to the default excludes, see ${useDefaultExcludes}.
+   */
+  @Parameter List<String> excludes = List.of();
+
+  /**
+   * Whether to leave out {@code .git}, {@code node_modules} and {@code target} directories in
+   * addition to ${excludes}.
+   */
+  @Parameter(property = "pkl.useDefaultExcludes", defaultValue = "true")
+  boolean useDefaultExcludes = true;
+
   /**
    * The base directory to search pkl files in via ${pkl.files}.
    */
@@ -62,6 +75,107 @@ public sealed class TestMojo extends AbstractMojo permits OverwriteMojo {
    */
   @Parameter Map<String, String> environmentVariables = Map.of();
 
+  /**
+   * The number of test modules to run concurrently, each on its own evaluator.
+   * Defaults to the number of available processors, like for the eval goal.
+   */
+  @Parameter(property = "pkl.parallelism")
+  int parallelism;
+
+  /**
+   * Whether to skip test modules that succeeded before and whose source, imported modules, read
+   * resources, expected output and configuration did not change since. Ignored when overwriting.
+   * Incremental builds search all files before testing the first one, to analyze their imports.
+   * Only with {@code false}, without sharding, changed files or known timings are modules tested
+   * while the search is still running.
+   */
+  @Parameter(property = "pkl.incremental", defaultValue = "true")
+  boolean incremental;
+
+  /**
+   * The file keeping track of succeeded test modules between incremental builds.
+   */
+  @Parameter(
+      defaultValue = "${project.build.directory}/pkl/${mojoExecution.executionId}.test-state")
+  String stateFile;
+
+  /**
+   * Files changed since the tests last ran, like the ones listed by version control, relative to
+   * the working directory. If given, only the test modules importing any of them, directly or
+   * transitively, being or expecting the output of one of them, or having read one of them when
+   * they last succeeded are run. Test modules without such a record of an incremental build run
+   * whenever a changed file is not a module.
+   */
+  @Parameter(property = "pkl.changedFiles")
+  Set<String> changedFiles;
+
+  /**
+   * The shard of the test modules to run, from 1 to ${pkl.shardCount}.
+   */
+  @Parameter(property = "pkl.shardIndex", defaultValue = "1")
+  int shardIndex = 1;
+
+  /**
+   * The number of shards to split the test modules into, to run each on another node. Modules are
+   * balanced by the durations in ${pkl.shardTimingsFile}, or by their number if it is not set or
+   * none are known.
+   */
+  @Parameter(property = "pkl.shardCount", defaultValue = "1")
+  int shardCount = 1;
+
+  /**
+   * The timings to balance shards by, which all nodes have to read alike, e.g. a
+   * ${pkl.timingsFile} restored from the same cache. Not set by default, as the timings of each
+   * node differ.
+   */
+  @Parameter(property = "pkl.shardTimingsFile")
+  String shardTimingsFile;
+
+  /**
+   * The file keeping the duration and CPU time of each test module, to start the longest modules
+   * first when running in parallel.
+   */
+  @Parameter(
+      property = "pkl.timingsFile",
+      defaultValue = "${project.build.directory}/pkl/${mojoExecution.executionId}.test-timings")
+  String timingsFile;
+
+  /**
+   * The file keeping the import graph of the tested modules between builds, updated whenever the
+   * modules are analyzed.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/pkl/import-graph.properties")
+  String graphFile;
+
+  /**
+   * The directory to cache downloaded packages in, shared by all builds using the same local
+   * repository.
+   */
+  @Parameter(
+      property = "pkl.moduleCacheDir",
+      defaultValue = "${settings.localRepository}/.cache/pkl")
+  String moduleCacheDir;
+
+  /**
+   * Whether to only use packages from the module cache and fail instead of downloading
+   * packages, remote modules or resources. Follows Maven's offline mode by default.
+   */
+  @Parameter(property = "pkl.offline", defaultValue = "${settings.offline}")
+  boolean offline;
+
+  /**
+   * Whether to reuse evaluators, and the modules they loaded, in later executions with the same
+   * modulepath, properties and environment variables within the same Maven session.
+   */
+  @Parameter(property = "pkl.reuseEvaluators", defaultValue = "true")
+  boolean reuseEvaluators;
+
+  /**
+   * The Maven session, to share evaluators among its executions.
+   */
+  @Parameter(defaultValue = "${session}", readonly = true)
+  Object session;
+
   /**
    * Whether to skip execution.
    */
@@ -72,7 +186,22 @@ public sealed class TestMojo extends AbstractMojo permits OverwriteMojo {
    */
   boolean color = true;
 
-  private static final int MAX_DEPTH = 8;
+  // the number of files found but not yet tested, beyond which the search waits
+  private static final int DISCOVERY_CAPACITY = 1024;
+
+  private static final record Result(
+      Path file,
+      String module,
+      TestStats stats,
+      Timings.Timing timing,
+      BufferedLog log,
+      Set<URI> resources,
+      Set<URI> listings) {}
+
+  private static final record Cached(String module, TestStats stats) {}
+
+  // the line of a build state entry holding the number of tests and the module name
+  private static final String STATE_TESTS = "tests ";
 
   public TestMojo() {
     this(false);
@@ -91,26 +220,151 @@ public sealed class TestMojo extends AbstractMojo permits OverwriteMojo {
       return;
     }
     this.logger.beginExecution();
-    // searching files and running tests cannot be done in the same stream as
-    // the tests may delete `mytest.pkl-actual.pcf` files.
-    final Set<Path> files;
-    try {
-      final var directory = Path.of(this.directory);
-      final var globExpression = "glob:" + directory + "/" + this.files;
-      files =
-          Files.walk(directory, MAX_DEPTH)
-              .filter(FileSystems.getDefault().getPathMatcher(globExpression)::matches)
-              .collect(Collectors.toSet());
+    if (this.shardCount < 1 || this.shardIndex < 1 || this.shardIndex > this.shardCount) {
+      throw new MojoFailureException(
+          "Invalid shard " + this.shardIndex + " of " + this.shardCount + ". expected 1 to count");
+    }
+    final var directory = Path.of(this.directory);
+    final var discovery =
+        new FileDiscovery(
+            List.of(this.files), FileDiscovery.excludes(this.excludes, this.useDefaultExcludes));
+    final List<TestStats> results = new ArrayList<>();
+    final var dependencyState =
+        new DependencyState(new ContentHashes(this.modulepathEntries()));
+    final var settings = this.evaluatorSettings();
+    final var evaluators = SessionEvaluators.of(this.reuseEvaluators ? this.session : null);
+    final var incremental = this.incremental && this.stateFile != null && !this.overwrite;
+    final var fingerprint = incremental ? this.fingerprint() : "";
+    final var previousState =
+        incremental ? BuildState.load(Path.of(this.stateFile), fingerprint) : null;
+    final var state = incremental ? BuildState.empty(Path.of(this.stateFile), fingerprint) : null;
+    // the state lines of all imported modules and expected outputs, for each module to test
+    final Map<Path, List<String>> dependencies = new HashMap<>();
+    final var changed =
+        this.changedFiles != null
+            ? this.changedFiles.stream()
+                .map(file -> Path.of(file).toAbsolutePath().normalize().toUri())
+                .collect(Collectors.toSet())
+            : null;
+    ImportGraph graph = null;
+    final var sharded = this.shardCount != 1;
+    final var timings = this.timingsFile != null ? Timings.load(Path.of(this.timingsFile)) : null;
+    // known durations are only of use to start the longest modules first if they run in parallel
+    final var scheduled =
+        timings != null
+            && !timings.isEmpty()
+            && WorkerPool.effectiveParallelism(this.parallelism) > 1;
+    final WorkerPool.ResultConsumer<Result> consumer =
+        result -> {
+          result.log().flush();
+          results.add(result.stats());
+          if (timings != null) {
+            timings.put(Timings.key(directory, result.file()), result.timing());
+          }
+          if (incremental
+              && result.stats().levelOfSuccess() == TestStats.LevelOfSuccess.SUCCEEDED) {
+            final List<String> entry = new ArrayList<>(dependencies.get(result.file()));
+            entry.addAll(dependencyState.resources(result.resources()));
+            entry.addAll(dependencyState.listings(result.listings()));
+            entry.add(STATE_TESTS + result.stats().testsRun() + " " + result.module());
+            state.put(result.file().toAbsolutePath().normalize().toString(), entry);
+          }
+        };
+    // the evaluators start up while the files are searched, and modules are tested as soon as
+    // they are found unless all of them are needed first, to shard or schedule them or for their
+    // import graph. The discovery lists every directory completely before handing out its files,
+    // as the tests may delete `mytest.pkl-actual.pcf` files.
+    try (final var files = discovery.start(directory, DISCOVERY_CAPACITY);
+        final var workers =
+            new WorkerPool<SharedEvaluator>(
+                this.parallelism,
+                "pkl-test",
+                () -> evaluators.acquire(settings),
+                evaluators::release)) {
+      workers.warmUp(SharedEvaluator::warmUp);
+      if (!incremental && changed == null && !sharded && !scheduled) {
+        workers.forEachOrdered(files, this::runTests, consumer);
+      } else {
+        final List<Path> found = new ArrayList<>();
+        files.forEach(found::add);
+        final var allFiles = sharded ? this.shard(directory, found) : found;
+        if (incremental || changed != null) {
+          graph = workers.call(worker -> ImportGraph.analyze(worker.evaluator(), allFiles));
+        }
+        final List<Path> outdated = new ArrayList<>();
+        // changed files that are no module of the graph may be resources read by any module
+        final var changedResources =
+            changed != null ? TestMojo.withoutModules(changed, graph) : Set.<URI>of();
+        int unaffected = 0;
+        for (final var file : allFiles) {
+          final var key = file.toAbsolutePath().normalize().toString();
+          final Optional<List<String>> entry =
+              incremental ? previousState.get(key) : Optional.empty();
+          if (changed != null && !TestMojo.isAffected(graph, file, changed, changedResources, entry)) {
+            unaffected++;
+            // neither run nor known to be outdated
+            entry.ifPresent(lines -> state.put(key, lines));
+            continue;
+          }
+          if (!incremental) {
+            outdated.add(file);
+            continue;
+          }
+          final List<String> moduleDependencies =
+              new ArrayList<>(dependencyState.modules(graph, file));
+          final var cached = entry.flatMap(TestMojo::cached);
+          if (cached.isPresent()
+              && dependencyState.isUpToDate(entry.get(), moduleDependencies)) {
+            this.logger.upToDate(cached.get().module(), cached.get().stats());
+            results.add(cached.get().stats());
+            state.put(key, entry.get());
+          } else {
+            moduleDependencies.addAll(
+                dependencyState.files(
+                    DependencyState.FILE, List.of(TestMojo.expectedOutput(file))));
+            dependencies.put(file, moduleDependencies);
+            outdated.add(file);
+          }
+        }
+        if (changed != null) {
+          this.logger.affectedTests(allFiles.size() - unaffected, allFiles.size());
+        }
+        workers.forEachOrdered(
+            outdated, TestMojo.longestFirst(directory, timings), this::runTests, consumer);
+      }
     } catch (final IOException exception) {
       throw new MojoExecutionException("Failed to read test files", exception);
+    } catch (final UncheckedIOException exception) {
+      throw new MojoExecutionException("Failed to read test files", exception.getCause());
+    }
+    if (incremental) {
+      try {
+        state.store();
+      } catch (final IOException exception) {
+        throw new MojoExecutionException("Failed to write " + this.stateFile, exception);
+      }
+    }
+    if (graph != null && this.graphFile != null) {
+      try {
+        ImportGraph.update(Path.of(this.graphFile), graph);
+      } catch (final IOException exception) {
+        throw new MojoExecutionException("Failed to write " + this.graphFile, exception);
+      }
+    }
+    final var stats = results.stream().collect(new TestStats.SummingCollector());
+    if (timings != null && !results.isEmpty()) {
+      try {
+        timings.store();
+      } catch (final IOException exception) {
+        throw new MojoExecutionException("Failed to write " + this.timingsFile, exception);
+      }
+    }
+    if (timings != null) {
+      new TimingLogger(this.getLog()).deviations(timings.deviations());
     }
-    final TestStats stats;
-    try (final var modulePathResolver = this.modulePathResolver();
-        final var evaluator = this.evaluator(modulePathResolver)) {
-      stats =
-          files.stream()
-              .map(file -> this.runTests(evaluator, file))
-              .collect(new TestStats.SummingCollector());
+    if ((changed != null || sharded) && results.isEmpty()) {
+      // nothing to test is expected for changes outside of the tests' imports or a small shard
+      return;
     }
     if (stats.testsRun() == 0) {
       throw new MojoFailureException("No tests were executed!");
@@ -129,53 +383,158 @@ public sealed class TestMojo extends AbstractMojo permits OverwriteMojo {
     this.logger = new TestLogger(log);
   }
 
-  private final ModulePathResolver modulePathResolver() {
-    final Set<Path> modulepath =
-        this.modulepath != null
-            ? this.modulepath.stream().map(Path::of).collect(Collectors.toSet())
-            : Set.of();
-    return new ModulePathResolver(modulepath);
-  }
-
-  private final Evaluator evaluator(final ModulePathResolver modulePathResolver) {
-    return EvaluatorBuilder.unconfigured()
-        .setStackFrameTransformer(StackFrameTransformers.defaultTransformer)
-        .setAllowedModules(SecurityManagers.defaultAllowedModules)
-        .setAllowedResources(SecurityManagers.defaultAllowedResources)
-        .addModuleKeyFactory(ModuleKeyFactories.standardLibrary)
-        .addModuleKeyFactory(ModuleKeyFactories.modulePath(modulePathResolver))
-        .addModuleKeyFactory(ModuleKeyFactories.file)
-        .addModuleKeyFactory(ModuleKeyFactories.http)
-        .addModuleKeyFactory(ModuleKeyFactories.pkg)
-        .addModuleKeyFactory(ModuleKeyFactories.projectpackage)
-        .addModuleKeyFactory(ModuleKeyFactories.genericUrl)
-        .addResourceReader(ResourceReaders.file())
-        .addResourceReader(ResourceReaders.http())
-        .addResourceReader(ResourceReaders.https())
-        .addResourceReader(ResourceReaders.pkg())
-        .addResourceReader(ResourceReaders.projectpackage())
-        .addResourceReader(ResourceReaders.modulePath(modulePathResolver))
-        .addResourceReader(ResourceReaders.environmentVariable())
-        .addResourceReader(ResourceReaders.externalProperty())
-        .addEnvironmentVariables(this.environmentVariables)
-        .addExternalProperties(this.properties)
-        .setPowerAssertionsEnabled(true)
-        .setColor(this.color)
-        .build();
-  }
-
-  private final TestStats runTests(final Evaluator evaluator, final Path file) {
-    this.logger.runTest(file.toString());
-    final long start = System.currentTimeMillis();
-    final var results = evaluator.evaluateTest(ModuleSource.path(file), this.overwrite);
-    final double secondsElapsed = ((double) (System.currentTimeMillis() - start)) / 1_000;
-    final var stats = this.collectTestResults(results, secondsElapsed);
-    this.logger.testResult(results.moduleName(), stats);
-    return stats;
-  }
-
-  private TestStats collectTestResults(final TestResults result, final double secondsElapsed) {
-    this.logger.testLogs(result.logs());
+  private static Path expectedOutput(final Path file) {
+    return file.resolveSibling(file.getFileName() + "-expected.pcf").toAbsolutePath().normalize();
+  }
+
+  /**
+   * Returns the files of the shard to run.
+   */
+  private List<Path> shard(final Path directory, final List<Path> files) {
+    // node-local timings would partition the modules differently on every node
+    final var timings =
+        this.shardTimingsFile != null ? Timings.load(Path.of(this.shardTimingsFile)) : null;
+    if (timings == null || timings.isEmpty()) {
+      this.logger.shardsByCount(this.shardTimingsFile);
+    }
+    final var shard =
+        Shards.select(
+            files,
+            file ->
+                timings != null
+                    ? timings.seconds(Timings.key(directory, file))
+                    : OptionalDouble.empty(),
+            this.shardIndex,
+            this.shardCount);
+    this.logger.shard(this.shardIndex, this.shardCount, shard.size(), files.size());
+    return shard;
+  }
+
+  /**
+   * Orders the files by their previous durations, the longest first.
+   */
+  private static Comparator<Path> longestFirst(final Path directory, final Timings timings) {
+    if (timings == null) {
+      return (first, second) -> 0;
+    }
+    return Comparator.comparingDouble(
+            (final Path file) -> timings.expectedSeconds(Timings.key(directory, file)))
+        .reversed();
+  }
+
+  /**
+   * Whether the test module imports, expects or read any of the changed files, or listed the
+   * directory of one, when it last succeeded. Without such an entry, any changed file besides the
+   * modules of the graph may be a resource it reads.
+   */
+  private static boolean isAffected(
+      final ImportGraph graph,
+      final Path file,
+      final Set<URI> changed,
+      final Set<URI> changedResources,
+      final Optional<List<String>> entry) {
+    if (graph.dependsOnAny(file.toAbsolutePath().normalize().toUri(), changed)
+        || changed.contains(TestMojo.expectedOutput(file).toUri())) {
+      return true;
+    }
+    if (entry.isEmpty()) {
+      return !changedResources.isEmpty();
+    }
+    final var resources = DependencyState.uris(entry.get(), DependencyState.RESOURCE);
+    // a file created in or deleted from a directory listed for a glob may change its matches
+    final var listed =
+        DependencyState.uris(entry.get(), DependencyState.LISTING).stream()
+            .filter(uri -> "file".equals(uri.getScheme()))
+            .map(Path::of)
+            .collect(Collectors.toSet());
+    return changed.stream()
+        .anyMatch(
+            uri -> resources.contains(uri) || listed.contains(Path.of(uri).getParent()));
+  }
+
+  /**
+   * Returns the changed files that are no module of the graph.
+   */
+  private static Set<URI> withoutModules(final Set<URI> changed, final ImportGraph graph) {
+    final var modules = graph.modules();
+    return changed.stream().filter(uri -> !modules.contains(uri)).collect(Collectors.toSet());
+  }
+
+  /**
+   * Identifies everything besides modules, resources and expected outputs that influences the
+   * test results.
+   */
+  private String fingerprint() {
+    return ContentHashes.of(
+        String.join(
+            "\n",
+            Release.current().version().toString(),
+            new TreeMap<>(this.properties).toString(),
+            new TreeMap<>(this.environmentVariables).toString(),
+            this.modulepathEntries().stream().map(Path::toString).sorted().toList().toString()));
+  }
+
+  private static Optional<Cached> cached(final List<String> entry) {
+    return entry.stream()
+        .filter(line -> line.startsWith(STATE_TESTS))
+        .findFirst()
+        .flatMap(
+            line -> {
+              final var separator = line.indexOf(' ', STATE_TESTS.length());
+              if (separator < 0) {
+                return Optional.empty();
+              }
+              try {
+                final var testsRun =
+                    Integer.parseInt(line.substring(STATE_TESTS.length(), separator));
+                return Optional.of(
+                    new Cached(
+                        line.substring(separator + 1),
+                        TestStats.builder().setTestsRun(testsRun).build()));
+              } catch (final NumberFormatException exception) {
+                return Optional.empty();
+              }
+            });
+  }
+
+  private final Set<Path> modulepathEntries() {
+    return this.modulepath != null
+        ? this.modulepath.stream().map(Path::of).collect(Collectors.toSet())
+        : Set.of();
+  }
+
+  private final EvaluatorSettings evaluatorSettings() {
+    return new EvaluatorSettings(
+        this.modulepathEntries(),
+        this.properties,
+        this.environmentVariables,
+        this.moduleCacheDir != null ? Path.of(this.moduleCacheDir) : null,
+        this.offline,
+        this.color);
+  }
+
+  private final Result runTests(final SharedEvaluator worker, final Path file) {
+    final var log = new BufferedLog(this.getLog());
+    final var logger = new TestLogger(log);
+    logger.runTest(file.toString());
+    final var stopwatch = Timings.Stopwatch.start();
+    final var results = worker.evaluator().evaluateTest(ModuleSource.path(file), this.overwrite);
+    final var timing = stopwatch.stop();
+    final var stats = this.collectTestResults(logger, results, timing.seconds());
+    logger.testResult(results.moduleName(), stats);
+    return new Result(
+        file,
+        results.moduleName(),
+        stats,
+        timing,
+        log,
+        worker.recorder().resources(),
+        worker.recorder().listings());
+  }
+
+  private TestStats collectTestResults(
+      final TestLogger logger, final TestResults result, final double secondsElapsed) {
+    logger.testLogs(result.logs());
     final var stats =
         TestStats.builder().setTestsRun(result.totalTests()).setSecondsElapsed(secondsElapsed);
     final var error = result.error();
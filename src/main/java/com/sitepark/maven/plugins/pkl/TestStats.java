@@ -163,7 +163,8 @@ final record TestStats(
   public static final class SummingCollector
       implements Collector<TestStats, SummingCollector.Accumulator, TestStats> {
 
-    private static final Set<Characteristics> CHARACTERISTICS = Set.of(Characteristics.CONCURRENT);
+    // the accumulator is not thread-safe and the order of failures matters
+    private static final Set<Characteristics> CHARACTERISTICS = Set.of();
 
     private static final class Accumulator {
       private final Builder builder;
@@ -181,7 +182,8 @@ final record TestStats(
             .addTestsRun(other.builder.testsRun)
             .addFailures(other.builder.failures)
             .addErrors(other.builder.errors)
-            .addSkipped(other.builder.skipped);
+            .addSkipped(other.builder.skipped)
+            .addSecondsElapsed(other.builder.secondsElapsed);
         return this;
       }
 
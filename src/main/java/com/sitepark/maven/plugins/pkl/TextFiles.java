@@ -0,0 +1,161 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes and compares UTF-8 text files in chunks, so the text is never held in memory a second
+ * time as bytes.
+ *
+ * Instances reuse their encoder and buffers and must not be shared between threads.
+ */
+final class TextFiles {
+  private final CharsetEncoder encoder;
+  private final ByteBuffer encoded;
+  private final ByteBuffer existing;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  public TextFiles() {
+    this(BUFFER_SIZE);
+  }
+
+  TextFiles(final int bufferSize) {
+    // unpaired surrogates are replaced, just like String#getBytes does
+    this.encoder =
+        StandardCharsets.UTF_8
+            .newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.encoded = ByteBuffer.allocate(bufferSize);
+    this.existing = ByteBuffer.allocate(bufferSize);
+  }
+
+  /**
+   * Writes the text to the file, replacing its content.
+   */
+  public void write(final Path file, final CharSequence text) throws IOException {
+    try (final var channel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      final var input = CharBuffer.wrap(text);
+      this.encoder.reset();
+      boolean flushed = false;
+      while (!flushed) {
+        flushed = this.encode(input);
+        this.encoded.flip();
+        while (this.encoded.hasRemaining()) {
+          channel.write(this.encoded);
+        }
+        this.encoded.clear();
+      }
+    }
+  }
+
+  /**
+   * Writes the text to the stream, which is neither flushed nor closed.
+   */
+  public void write(final OutputStream stream, final CharSequence text) throws IOException {
+    final var input = CharBuffer.wrap(text);
+    this.encoder.reset();
+    boolean flushed = false;
+    while (!flushed) {
+      flushed = this.encode(input);
+      this.encoded.flip();
+      stream.write(this.encoded.array(), this.encoded.arrayOffset(), this.encoded.limit());
+      this.encoded.clear();
+    }
+  }
+
+  /**
+   * Whether the file exists and its content is the text, reading the file chunk by chunk and
+   * stopping at the first difference.
+   */
+  public boolean hasContent(final Path file, final CharSequence text) throws IOException {
+    if (!Files.isRegularFile(file) || Files.size(file) != TextFiles.encodedLength(text)) {
+      return false;
+    }
+    try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final var input = CharBuffer.wrap(text);
+      this.encoder.reset();
+      boolean flushed = false;
+      while (!flushed) {
+        flushed = this.encode(input);
+        this.encoded.flip();
+        this.existing.clear().limit(this.encoded.remaining());
+        while (this.existing.hasRemaining()) {
+          if (channel.read(this.existing) < 0) {
+            return false;
+          }
+        }
+        this.existing.flip();
+        final var equal = this.existing.equals(this.encoded);
+        this.encoded.clear();
+        if (!equal) {
+          return false;
+        }
+      }
+      return channel.read(this.existing.clear().limit(1)) < 0;
+    }
+  }
+
+  /**
+   * Encodes the next chunk of the input into the encoded buffer.
+   *
+   * @return whether the input is completely encoded and flushed
+   */
+  private boolean encode(final CharBuffer input) throws CharacterCodingException {
+    final var result = this.encoder.encode(input, this.encoded, true);
+    if (result.isError()) {
+      result.throwException();
+    }
+    if (result.isOverflow() || input.hasRemaining()) {
+      return false;
+    }
+    final var flushResult = this.encoder.flush(this.encoded);
+    if (flushResult.isError()) {
+      flushResult.throwException();
+    }
+    return flushResult.isUnderflow();
+  }
+
+  /**
+   * The number of bytes the text takes in UTF-8, without encoding it.
+   */
+  static long encodedLength(final CharSequence text) {
+    long length = 0;
+    final var chars = text.length();
+    for (int i = 0; i < chars; i++) {
+      final var c = text.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < chars
+          && Character.isLowSurrogate(text.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        // replaced by '?'
+        length += 1;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+}
@@ -0,0 +1,62 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.text.DecimalFormat;
+import java.util.List;
+import org.apache.maven.plugin.logging.Log;
+
+final class TimingLogger {
+  private final Log log;
+
+  private static final String INDENT = "  ";
+  private static final DecimalFormat SECONDS_FORMAT = new DecimalFormat("#.###");
+  private static final DecimalFormat PERCENT_FORMAT = new DecimalFormat("+#;-#");
+
+  public TimingLogger(final Log log) {
+    this.log = log;
+  }
+
+  /**
+   * Logs the total time of the modules that ran before, as well as each module taking
+   * considerably longer or shorter than before.
+   */
+  public void deviations(final List<Timings.Deviation> deviations) {
+    if (deviations.isEmpty()) {
+      return;
+    }
+    final var actual = deviations.stream().mapToDouble(d -> d.actual().seconds()).sum();
+    final var previous = deviations.stream().mapToDouble(d -> d.previous().seconds()).sum();
+    this.log.info(
+        "Modules run before took "
+            + TimingLogger.seconds(actual)
+            + ", previously "
+            + TimingLogger.seconds(previous)
+            + TimingLogger.percent(actual, previous));
+    for (final var deviation : deviations) {
+      if (!deviation.isNotable()) {
+        continue;
+      }
+      final var timing = deviation.actual();
+      final var cpu =
+          timing.cpuSeconds().isPresent()
+              ? " (CPU " + TimingLogger.seconds(timing.cpuSeconds().getAsDouble()) + ")"
+              : "";
+      this.log.info(
+          INDENT
+              + deviation.key()
+              + " took "
+              + TimingLogger.seconds(timing.seconds())
+              + cpu
+              + ", previously "
+              + TimingLogger.seconds(deviation.previous().seconds())
+              + TimingLogger.percent(timing.seconds(), deviation.previous().seconds()));
+    }
+  }
+
+  private static String seconds(final double seconds) {
+    return SECONDS_FORMAT.format(seconds) + "s";
+  }
+
+  private static String percent(final double actual, final double previous) {
+    return previous > 0 ? " (" + PERCENT_FORMAT.format((actual / previous - 1) * 100) + "%)" : "";
+  }
+}
@@ -0,0 +1,235 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The time each module took when it was last run, persisted between builds. Modules are
+ * identified by their path relative to the directory they were found in, so the timings can be
+ * shared between checkouts in different locations.
+ *
+ * The timings of the current run are kept apart from the ones loaded, so both can be compared
+ * once all modules ran.
+ */
+final class Timings {
+  private final Path file;
+  private final Properties history;
+  private final Map<String, Timing> current;
+  private final double averageSeconds;
+
+  private static final String COMMENT = "pkl-maven-plugin module timings, do not edit";
+
+  /**
+   * @param cpuSeconds the CPU time of the thread running the module, if the JVM measures it
+   */
+  public static record Timing(double seconds, OptionalDouble cpuSeconds) {
+
+    static Optional<Timing> parse(final String value) {
+      final var parts = value.trim().split(" ");
+      try {
+        return Optional.of(
+            new Timing(
+                Double.parseDouble(parts[0]),
+                parts.length > 1
+                    ? OptionalDouble.of(Double.parseDouble(parts[1]))
+                    : OptionalDouble.empty()));
+      } catch (final NumberFormatException exception) {
+        return Optional.empty();
+      }
+    }
+
+    String format() {
+      return this.seconds
+          + (this.cpuSeconds.isPresent() ? " " + this.cpuSeconds.getAsDouble() : "");
+    }
+  }
+
+  /**
+   * A module whose timing of the current run can be compared to a previous one.
+   */
+  public static record Deviation(String key, Timing previous, Timing actual) {
+
+    // changes below both are considered noise
+    private static final double NOTABLE_RATIO = 0.5;
+    private static final double NOTABLE_SECONDS = 1;
+
+    /**
+     * Whether the module took considerably longer or shorter than before.
+     */
+    public boolean isNotable() {
+      final var difference = Math.abs(this.actual.seconds() - this.previous.seconds());
+      return difference >= NOTABLE_SECONDS
+          && difference >= NOTABLE_RATIO * this.previous.seconds();
+    }
+  }
+
+  /**
+   * Measures the time a module takes, and the memory it allocates, on the current thread.
+   */
+  public static final class Stopwatch {
+    private final long start;
+    private final long cpuStart;
+    private final long allocationStart;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private Stopwatch() {
+      this.start = System.nanoTime();
+      this.cpuStart = Stopwatch.cpuTime();
+      this.allocationStart = Stopwatch.allocatedBytesTotal();
+    }
+
+    public static Stopwatch start() {
+      return new Stopwatch();
+    }
+
+    public Timing stop() {
+      final var seconds = (System.nanoTime() - this.start) / 1e9;
+      final var cpuEnd = Stopwatch.cpuTime();
+      return new Timing(
+          seconds,
+          this.cpuStart >= 0 && cpuEnd >= 0
+              ? OptionalDouble.of((cpuEnd - this.cpuStart) / 1e9)
+              : OptionalDouble.empty());
+    }
+
+    /**
+     * Returns the bytes the current thread allocated since the start, if the JVM measures them.
+     */
+    public OptionalLong allocatedBytes() {
+      final var allocationEnd = Stopwatch.allocatedBytesTotal();
+      return this.allocationStart >= 0 && allocationEnd >= 0
+          ? OptionalLong.of(allocationEnd - this.allocationStart)
+          : OptionalLong.empty();
+    }
+
+    // -1 if the JVM does not measure it
+    private static long allocatedBytesTotal() {
+      return THREADS instanceof final com.sun.management.ThreadMXBean threads
+              && threads.isThreadAllocatedMemorySupported()
+              && threads.isThreadAllocatedMemoryEnabled()
+          ? threads.getCurrentThreadAllocatedBytes()
+          : -1;
+    }
+
+    // -1 if the JVM does not measure it
+    private static long cpuTime() {
+      return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+  }
+
+  private Timings(final Path file, final Properties history) {
+    this.file = file;
+    this.history = history;
+    this.current = new TreeMap<>();
+    this.averageSeconds =
+        history.stringPropertyNames().stream()
+            .map(key -> Timing.parse(history.getProperty(key)))
+            .flatMap(Optional::stream)
+            .mapToDouble(Timing::seconds)
+            .average()
+            .orElse(0);
+  }
+
+  /**
+   * Reads the timings from the file. A missing or unreadable file results in no timings.
+   */
+  public static Timings load(final Path file) {
+    final var history = new Properties();
+    if (Files.isRegularFile(file)) {
+      try (final InputStream stream = Files.newInputStream(file)) {
+        history.load(stream);
+      } catch (final IOException | IllegalArgumentException exception) {
+        history.clear();
+      }
+    }
+    return new Timings(file, history);
+  }
+
+  /**
+   * Returns the key of a module found in the given directory.
+   */
+  public static String key(final Path directory, final Path module) {
+    final var relative =
+        directory.toAbsolutePath().normalize().relativize(module.toAbsolutePath().normalize());
+    return relative.toString().replace(relative.getFileSystem().getSeparator(), "/");
+  }
+
+  /**
+   * Whether any module's timing is known from a previous run.
+   */
+  public boolean isEmpty() {
+    return this.history.isEmpty();
+  }
+
+  /**
+   * Returns the timing of the module's previous run.
+   */
+  public Optional<Timing> get(final String key) {
+    return Optional.ofNullable(this.history.getProperty(key)).flatMap(Timing::parse);
+  }
+
+  /**
+   * Returns the seconds of the module's previous run.
+   */
+  public OptionalDouble seconds(final String key) {
+    return this.get(key)
+        .map(timing -> OptionalDouble.of(timing.seconds()))
+        .orElseGet(OptionalDouble::empty);
+  }
+
+  /**
+   * Returns the seconds the module is expected to take, which is the average of all modules if
+   * its own timing is unknown.
+   */
+  public double expectedSeconds(final String key) {
+    return this.seconds(key).orElse(this.averageSeconds);
+  }
+
+  public void put(final String key, final Timing timing) {
+    this.current.put(key, timing);
+  }
+
+  /**
+   * Compares the timings of the current run to the previous ones, in the order of the modules.
+   */
+  public List<Deviation> deviations() {
+    final List<Deviation> deviations = new ArrayList<>();
+    for (final var entry : this.current.entrySet()) {
+      this.get(entry.getKey())
+          .ifPresent(
+              previous ->
+                  deviations.add(new Deviation(entry.getKey(), previous, entry.getValue())));
+    }
+    return deviations;
+  }
+
+  /**
+   * Stores the timings of the current run, keeping those of modules that were not run this time.
+   */
+  public void store() throws IOException {
+    final var parent = this.file.getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    final var properties = new Properties();
+    properties.putAll(this.history);
+    this.current.forEach((key, timing) -> properties.setProperty(key, timing.format()));
+    try (final OutputStream stream = Files.newOutputStream(this.file)) {
+      properties.store(stream, COMMENT);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.nio.file.Path;
+import java.text.DecimalFormat;
+import java.util.Collection;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.shared.utils.logging.MessageUtils;
+
+final class WatchLogger {
+  private final Log log;
+
+  private static final DecimalFormat SECONDS_FORMAT = new DecimalFormat("#.###");
+
+  public WatchLogger(final Log log) {
+    this.log = log;
+  }
+
+  public void executionSkipped() {
+    this.log.info("Watching is skipped");
+  }
+
+  public void watching(final Collection<Path> roots) {
+    this.log.info("Watching " + roots.stream().map(Path::toString).sorted().toList());
+  }
+
+  public void changedFile(final Path file) {
+    this.log.debug("Changed " + file);
+  }
+
+  public void goalFailed(final String goal, final Exception exception) {
+    this.log.error(
+        MessageUtils.buffer()
+            .failure(
+                goal
+                    + " failed: "
+                    + (exception.getMessage() != null
+                        ? exception.getMessage()
+                        : exception.toString()))
+            .build());
+    this.log.debug("", exception);
+  }
+
+  public void cycle(final int changedFiles, final double seconds) {
+    this.log.info(
+        MessageUtils.buffer()
+            .success(
+                "Handled "
+                    + changedFiles
+                    + (changedFiles == 1 ? " changed file" : " changed files")
+                    + " in "
+                    + SECONDS_FORMAT.format(seconds)
+                    + "s")
+            .build());
+    this.log.info("");
+  }
+}
@@ -0,0 +1,460 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Evaluates, tests and checks the format of modules like the eval, test and check-format goals,
+ * then keeps doing so for every change until interrupted. All goals run incrementally, so a
+ * change only affects the modules depending on it, and their evaluators stay warm between cycles
+ * until they have read a changed file.
+ */
+@Mojo(name = "watch", requiresDependencyResolution = ResolutionScope.TEST)
+public final class WatchMojo extends AbstractMojo {
+  private WatchLogger logger;
+
+  /**
+   * A globbed path, relative to ${pkl.directory} matching all pkl files to evaluate.
+   */
+  @Parameter String files;
+
+  /**
+   * A globbed path, relative to ${pkl.directory} matching all pkl files to test.
+   */
+  @Parameter String testFiles;
+
+  /**
+   * The directory where the evaluated files are generated to. Required with ${pkl.files}.
+   */
+  @Parameter String output;
+
+  /**
+   * Files and directories to check the format of.
+   */
+  @Parameter Set<String> paths;
+
+  /**
+   * Globbed paths, relative to ${pkl.directory}, of files and directories to leave out. Excluded
+   * directories are neither searched nor watched. They add to the default excludes, see
+   * ${useDefaultExcludes}.
+   */
+  @Parameter List<String> excludes = List.of();
+
+  /**
+   * Whether to leave out {@code .git}, {@code node_modules} and {@code target} directories in
+   * addition to ${excludes}.
+   */
+  @Parameter(property = "pkl.useDefaultExcludes", defaultValue = "true")
+  boolean useDefaultExcludes = true;
+
+  /**
+   * The base directory to search and watch pkl files in.
+   */
+  @Parameter(defaultValue = "${basedir}")
+  String directory;
+
+  /**
+   * A modulepath to use when executing.
+   */
+  @Parameter Set<String> modulepath;
+
+  /**
+   * Properties to use when executing.
+   */
+  @Parameter Map<String, String> properties = Map.of();
+
+  /**
+   * Environment variables to use when executing.
+   */
+  @Parameter Map<String, String> environmentVariables = Map.of();
+
+  /**
+   * The number of modules to evaluate or test concurrently, each on its own evaluator.
+   * Defaults to the number of available processors.
+   */
+  @Parameter(property = "pkl.parallelism")
+  int parallelism;
+
+  /**
+   * The directory keeping track of evaluated, tested and checked modules between cycles.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/pkl/watch")
+  String stateDirectory;
+
+  /**
+   * The file keeping the import graph of the modules between builds.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/pkl/import-graph.properties")
+  String graphFile;
+
+  /**
+   * The milliseconds to wait after a change for further changes, before handling all of them in
+   * one cycle.
+   */
+  @Parameter(property = "pkl.watch.debounce", defaultValue = "200")
+  long debounce = 200;
+
+  /**
+   * The directory to cache downloaded packages in, shared by all builds using the same local
+   * repository.
+   */
+  @Parameter(
+      property = "pkl.moduleCacheDir",
+      defaultValue = "${settings.localRepository}/.cache/pkl")
+  String moduleCacheDir;
+
+  /**
+   * Whether to only use packages from the module cache and fail instead of downloading
+   * packages, remote modules or resources. Follows Maven's offline mode by default.
+   */
+  @Parameter(property = "pkl.offline", defaultValue = "${settings.offline}")
+  boolean offline;
+
+  /**
+   * The Maven session, to share evaluators with other executions.
+   */
+  @Parameter(defaultValue = "${session}", readonly = true)
+  Object session;
+
+  /**
+   * Whether to skip execution.
+   */
+  @Parameter boolean skip;
+
+  /**
+   * Exists only to be disabled by tests.
+   */
+  boolean color = true;
+
+  /**
+   * The watched directories, with the roots they were found in to match the excludes against, and
+   * the content of the test outputs the goals left in them.
+   */
+  private static final record Watch(
+      WatchService service,
+      List<Path> roots,
+      FileDiscovery discovery,
+      Path output,
+      Map<WatchKey, Path> directories,
+      Map<Path, String> testOutputs) {
+
+    /**
+     * Watches the directory and all directories within it that are not excluded.
+     */
+    void register(final Path directory) throws IOException {
+      Files.walkFileTree(
+          directory,
+          new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(
+                final Path current, final BasicFileAttributes attributes) throws IOException {
+              if (Watch.this.isIgnored(current)) {
+                return FileVisitResult.SKIP_SUBTREE;
+              }
+              Watch.this.directories.put(
+                  current.register(
+                      Watch.this.service,
+                      StandardWatchEventKinds.ENTRY_CREATE,
+                      StandardWatchEventKinds.ENTRY_MODIFY,
+                      StandardWatchEventKinds.ENTRY_DELETE),
+                  current);
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    }
+
+    /**
+     * Adds the files changed according to the events of the key, and watches new directories.
+     */
+    void collect(final WatchKey key, final Set<Path> changed) throws IOException {
+      final var directory = this.directories.get(key);
+      if (directory == null) {
+        key.cancel();
+        return;
+      }
+      for (final var event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          // events were lost, the incremental goals find the changes anyway
+          changed.add(directory);
+          continue;
+        }
+        final var file = directory.resolve((Path) event.context());
+        if (this.isIgnored(file) || this.isLeftByGoals(file)) {
+          continue;
+        }
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+          this.register(file);
+        }
+        changed.add(file);
+      }
+      if (!key.reset()) {
+        this.directories.remove(key);
+      }
+    }
+
+    /**
+     * Remembers the content of the expected and actual outputs of the tests in the watched
+     * directories, so the goals writing or deleting them do not start another cycle.
+     */
+    void snapshotTestOutputs() throws IOException {
+      this.testOutputs.clear();
+      for (final var directory : this.directories.values()) {
+        try (final var files = Files.list(directory)) {
+          files
+              .filter(Watch::isTestOutput)
+              .forEach(file -> this.testOutputs.put(file, ContentHashes.of(file)));
+        } catch (final NoSuchFileException exception) {
+          // deleted since, its key is cancelled with the next event
+        }
+      }
+    }
+
+    /**
+     * Whether the file is a test output the goals left as it is now.
+     */
+    private boolean isLeftByGoals(final Path file) {
+      return Watch.isTestOutput(file)
+          && this.testOutputs
+              .getOrDefault(file, ContentHashes.MISSING)
+              .equals(ContentHashes.of(file));
+    }
+
+    private static boolean isTestOutput(final Path file) {
+      final var name = file.getFileName().toString();
+      return name.endsWith("-expected.pcf") || name.endsWith("-actual.pcf");
+    }
+
+    private boolean isIgnored(final Path path) {
+      if (this.output != null && path.startsWith(this.output)) {
+        return true;
+      }
+      return this.roots.stream()
+          .filter(path::startsWith)
+          .anyMatch(root -> this.discovery.isExcluded(root.relativize(path)));
+    }
+  }
+
+  public WatchMojo() {}
+
+  public void execute() throws MojoFailureException, MojoExecutionException {
+    if (this.logger == null) {
+      this.logger = new WatchLogger(this.getLog());
+    }
+    if (this.skip) {
+      this.logger.executionSkipped();
+      return;
+    }
+    if (this.files == null
+        && this.testFiles == null
+        && (this.paths == null || this.paths.isEmpty())) {
+      throw new MojoFailureException("Nothing to watch. expected files, testFiles or paths");
+    }
+    if (this.files != null && this.output == null) {
+      throw new MojoFailureException("output has to be set to evaluate files");
+    }
+    this.watch(Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void setLog(final Log log) {
+    super.setLog(log);
+    this.logger = new WatchLogger(log);
+  }
+
+  /**
+   * Runs the goals once, then again for every change until the given number of cycles handled
+   * changes or the thread is interrupted.
+   */
+  void watch(final int cycles) throws MojoExecutionException {
+    // evaluators are kept between cycles by the session, and only replaced once stale
+    final var evaluatorSession = this.session != null ? this.session : new Object();
+    final var output =
+        this.output != null ? Path.of(this.output).toAbsolutePath().normalize() : null;
+    final var roots = this.roots();
+    try (final var service = FileSystems.getDefault().newWatchService()) {
+      final var watch =
+          new Watch(
+              service,
+              roots,
+              new FileDiscovery(
+                  List.of(), FileDiscovery.excludes(this.excludes, this.useDefaultExcludes)),
+              output,
+              new HashMap<>(),
+              new HashMap<>());
+      // changes made while the first cycle runs are handled by the next one
+      for (final var root : roots) {
+        watch.register(root);
+      }
+      this.runGoals(evaluatorSession, null);
+      watch.snapshotTestOutputs();
+      this.logger.watching(roots);
+      int cycle = 0;
+      while (cycle < cycles) {
+        final Set<Path> changed = new TreeSet<>();
+        // the first change starts a cycle, which waits until no more changes follow
+        var key = service.take();
+        while (key != null) {
+          watch.collect(key, changed);
+          key = service.poll(this.debounce, TimeUnit.MILLISECONDS);
+        }
+        if (changed.isEmpty()) {
+          continue;
+        }
+        final var start = System.nanoTime();
+        changed.forEach(this.logger::changedFile);
+        this.runGoals(evaluatorSession, changed);
+        watch.snapshotTestOutputs();
+        this.logger.cycle(changed.size(), (System.nanoTime() - start) / 1e9);
+        cycle++;
+      }
+    } catch (final IOException exception) {
+      throw new MojoExecutionException("Failed to watch " + roots, exception);
+    } catch (final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns the directories to watch, without those within another one.
+   */
+  private List<Path> roots() {
+    final Set<Path> directories = new TreeSet<>();
+    directories.add(Path.of(this.directory));
+    if (this.modulepath != null) {
+      this.modulepath.stream().map(Path::of).forEach(directories::add);
+    }
+    if (this.paths != null) {
+      this.paths.stream().map(Path::of).forEach(directories::add);
+    }
+    final var absolute =
+        directories.stream()
+            .map(path -> path.toAbsolutePath().normalize())
+            // a jar on the modulepath or a single file to check is watched by its directory
+            .map(path -> Files.isRegularFile(path) ? path.getParent() : path)
+            .filter(Files::isDirectory)
+            .collect(Collectors.toCollection(TreeSet::new));
+    final List<Path> roots = new ArrayList<>();
+    for (final var path : absolute) {
+      if (roots.stream().noneMatch(path::startsWith)) {
+        roots.add(path);
+      }
+    }
+    return roots;
+  }
+
+  /**
+   * Runs the configured goals, reporting failures instead of ending the watch.
+   *
+   * @param changed the files changed since the last cycle, or {@code null} for the first one
+   */
+  private void runGoals(final Object evaluatorSession, final Set<Path> changed) {
+    if (this.files != null) {
+      this.runGoal("eval", this.evalMojo(evaluatorSession));
+    }
+    if (this.testFiles != null) {
+      this.runGoal("test", this.testMojo(evaluatorSession, changed));
+    }
+    if (this.paths != null && !this.paths.isEmpty()) {
+      this.runGoal("check-format", this.checkFormatMojo());
+    }
+  }
+
+  private void runGoal(final String goal, final AbstractMojo mojo) {
+    try {
+      mojo.execute();
+    } catch (final MojoFailureException | MojoExecutionException | RuntimeException exception) {
+      // includes failures of Pkl itself, which should not end the watch either
+      this.logger.goalFailed(goal, exception);
+    }
+  }
+
+  private EvalMojo evalMojo(final Object evaluatorSession) {
+    final var mojo = new EvalMojo();
+    mojo.files = this.files;
+    mojo.excludes = this.excludes;
+    mojo.useDefaultExcludes = this.useDefaultExcludes;
+    mojo.directory = this.directory;
+    mojo.output = this.output;
+    mojo.modulepath = this.modulepath;
+    mojo.properties = this.properties;
+    mojo.environmentVariables = this.environmentVariables;
+    mojo.parallelism = this.parallelism;
+    mojo.overwrite = true;
+    mojo.writeIfChanged = true;
+    mojo.incremental = true;
+    mojo.stateFile = this.stateFile("eval-state");
+    mojo.graphFile = this.graphFile;
+    mojo.moduleCacheDir = this.moduleCacheDir;
+    mojo.offline = this.offline;
+    mojo.reuseEvaluators = true;
+    mojo.session = evaluatorSession;
+    mojo.color = this.color;
+    mojo.setLog(this.getLog());
+    return mojo;
+  }
+
+  private TestMojo testMojo(final Object evaluatorSession, final Set<Path> changed) {
+    final var mojo = new TestMojo();
+    mojo.files = this.testFiles;
+    mojo.excludes = this.excludes;
+    mojo.useDefaultExcludes = this.useDefaultExcludes;
+    mojo.directory = this.directory;
+    mojo.modulepath = this.modulepath;
+    mojo.properties = this.properties;
+    mojo.environmentVariables = this.environmentVariables;
+    mojo.parallelism = this.parallelism;
+    mojo.incremental = true;
+    mojo.stateFile = this.stateFile("test-state");
+    mojo.changedFiles =
+        changed != null ? changed.stream().map(Path::toString).collect(Collectors.toSet()) : null;
+    mojo.graphFile = this.graphFile;
+    mojo.moduleCacheDir = this.moduleCacheDir;
+    mojo.offline = this.offline;
+    mojo.reuseEvaluators = true;
+    mojo.session = evaluatorSession;
+    mojo.color = this.color;
+    mojo.setLog(this.getLog());
+    return mojo;
+  }
+
+  private CheckFormatMojo checkFormatMojo() {
+    final var mojo = new CheckFormatMojo();
+    mojo.paths = this.paths;
+    mojo.excludes = this.excludes;
+    mojo.useDefaultExcludes = this.useDefaultExcludes;
+    mojo.grammarVersion = "latest";
+    mojo.parallelism = this.parallelism;
+    mojo.incremental = true;
+    mojo.stateFile = this.stateFile("format-state");
+    mojo.setLog(this.getLog());
+    return mojo;
+  }
+
+  private String stateFile(final String name) {
+    return this.stateDirectory != null ? Path.of(this.stateDirectory, name).toString() : null;
+  }
+}
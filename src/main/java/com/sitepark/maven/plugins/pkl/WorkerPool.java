@@ -0,0 +1,285 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Runs tasks on a bounded number of worker threads. Every worker owns a context (e.g. an
+ * evaluator) that is created on first use and disposed when the pool is closed, so contexts are
+ * never shared between threads.
+ *
+ * A parallelism of one runs all tasks on the calling thread.
+ */
+final class WorkerPool<C> implements AutoCloseable {
+  private final int parallelism;
+  private final Supplier<? extends C> factory;
+  private final Consumer<? super C> disposer;
+  private final Queue<C> contexts;
+  private final ThreadLocal<C> context;
+  private final ExecutorService executor;
+
+  /**
+   * How many times the number of tasks started but not yet consumed the scheduled tasks are chosen
+   * from.
+   */
+  static final int SCHEDULE_LOOKAHEAD = 4;
+
+  @FunctionalInterface
+  interface Task<C, T, R> {
+    R run(C context, T item) throws MojoExecutionException;
+  }
+
+  @FunctionalInterface
+  interface ResultConsumer<R> {
+    void accept(R result) throws MojoExecutionException;
+  }
+
+  private static final class WorkerThreadFactory implements ThreadFactory {
+    private final String name;
+    private final ClassLoader classLoader;
+    private final AtomicInteger count;
+
+    WorkerThreadFactory(final String name) {
+      this.name = name;
+      // pkl looks up its services via the context class loader, which has to be the plugin realm
+      this.classLoader = Thread.currentThread().getContextClassLoader();
+      this.count = new AtomicInteger();
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      final var thread = new Thread(runnable, this.name + "-" + this.count.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setContextClassLoader(this.classLoader);
+      return thread;
+    }
+  }
+
+  WorkerPool(
+      final int parallelism,
+      final String name,
+      final Supplier<? extends C> factory,
+      final Consumer<? super C> disposer) {
+    this.parallelism = WorkerPool.effectiveParallelism(parallelism);
+    this.factory = factory;
+    this.disposer = disposer;
+    this.contexts = new ConcurrentLinkedQueue<>();
+    this.context = ThreadLocal.withInitial(this::createContext);
+    this.executor =
+        this.parallelism > 1
+            ? Executors.newFixedThreadPool(this.parallelism, new WorkerThreadFactory(name))
+            : null;
+  }
+
+  /**
+   * Resolves the configured parallelism, where any value below one stands for the number of
+   * available processors.
+   */
+  static int effectiveParallelism(final int parallelism) {
+    return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+  }
+
+  int parallelism() {
+    return this.parallelism;
+  }
+
+  /**
+   * Creates the context of every worker ahead of the first task and prepares it with the given
+   * action. Worker threads do so in the background; with a parallelism of one, the calling thread
+   * does so right away. Failures are ignored, as they recur when a task needs the context.
+   */
+  void warmUp(final Consumer<? super C> action) {
+    final Runnable warmUp =
+        () -> {
+          try {
+            action.accept(this.context.get());
+          } catch (final RuntimeException exception) {
+            // reported by the first task instead
+          }
+        };
+    if (this.executor == null) {
+      warmUp.run();
+      return;
+    }
+    // while fewer threads than the parallelism exist, every task starts a new thread
+    for (int i = 0; i < this.parallelism; i++) {
+      this.executor.execute(warmUp);
+    }
+  }
+
+  /**
+   * Runs a single task on a worker and waits for its result.
+   */
+  <R> R call(final Function<? super C, ? extends R> task) throws MojoExecutionException {
+    if (this.executor == null) {
+      return task.apply(this.context.get());
+    }
+    return WorkerPool.await(this.executor.submit(() -> task.apply(this.context.get())));
+  }
+
+  /**
+   * Runs the task for every item and hands the results to the consumer on the calling thread, in
+   * the order of the items. The first failure cancels all pending tasks and is rethrown as is.
+   */
+  <T, R> void forEachOrdered(
+      final Iterable<? extends T> items,
+      final Task<? super C, ? super T, ? extends R> task,
+      final ResultConsumer<? super R> consumer)
+      throws MojoExecutionException {
+    if (this.executor == null) {
+      for (final T item : items) {
+        consumer.accept(task.run(this.context.get(), item));
+      }
+      return;
+    }
+    final int window = this.parallelism * 2;
+    final Deque<Future<? extends R>> pending = new ArrayDeque<>(window);
+    try {
+      for (final T item : items) {
+        pending.add(this.executor.submit(() -> task.run(this.context.get(), item)));
+        while (pending.size() >= window || pending.peek().isDone()) {
+          consumer.accept(WorkerPool.await(pending.poll()));
+          if (pending.isEmpty()) {
+            break;
+          }
+        }
+      }
+      while (!pending.isEmpty()) {
+        consumer.accept(WorkerPool.await(pending.poll()));
+      }
+    } finally {
+      pending.forEach(future -> future.cancel(false));
+    }
+  }
+
+  /**
+   * Like {@link #forEachOrdered(Iterable, Task, ResultConsumer)}, but starts the tasks in the
+   * given order, e.g. the longest first, while the results are still consumed in the order of the
+   * items. To bound the results held, at most twice the parallelism of tasks are started but not
+   * yet consumed. Up to the parallelism of them are started ahead of the order of the items,
+   * chosen from the next items up to {@link #SCHEDULE_LOOKAHEAD} times the bound, so the other
+   * half keeps the workers busy. With a parallelism of one the tasks run in the order of the items.
+   */
+  <T, R> void forEachOrdered(
+      final List<? extends T> items,
+      final Comparator<? super T> schedule,
+      final Task<? super C, ? super T, ? extends R> task,
+      final ResultConsumer<? super R> consumer)
+      throws MojoExecutionException {
+    if (this.executor == null) {
+      this.forEachOrdered(items, task, consumer);
+      return;
+    }
+    final int window = this.parallelism * 2;
+    final List<Future<? extends R>> started = new ArrayList<>(items.size());
+    for (int i = 0; i < items.size(); i++) {
+      started.add(null);
+    }
+    // consumed futures are dropped, not to hold on to their results
+    final var startedItems = new BitSet(items.size());
+    final var startedAhead = new BitSet(items.size());
+    // the items that may be started next, in the given order
+    final Queue<Integer> candidates =
+        new PriorityQueue<>(
+            Comparator.<Integer, T>comparing(items::get, schedule)
+                .thenComparing(Comparator.naturalOrder()));
+    int admitted = 0;
+    // the first item not started yet
+    int head = 0;
+    int running = 0;
+    int ahead = 0;
+    try {
+      for (int next = 0; next < items.size(); next++) {
+        final int lookahead = Math.min(items.size(), next + window * SCHEDULE_LOOKAHEAD);
+        while (admitted < lookahead) {
+          candidates.add(admitted++);
+        }
+        while (running < window && !candidates.isEmpty()) {
+          final Integer index = ahead < this.parallelism ? candidates.peek() : head;
+          candidates.remove(index);
+          final T item = items.get(index);
+          started.set(index, this.executor.submit(() -> task.run(this.context.get(), item)));
+          startedItems.set(index);
+          running++;
+          if (index != head) {
+            startedAhead.set(index);
+            ahead++;
+          }
+          while (startedItems.get(head)) {
+            if (startedAhead.get(head)) {
+              ahead--;
+            }
+            head++;
+          }
+        }
+        // the item to consume next is always started, as at most half the window runs ahead
+        final var future = started.set(next, null);
+        running--;
+        consumer.accept(WorkerPool.await(future));
+      }
+    } finally {
+      started.stream().filter(Objects::nonNull).forEach(future -> future.cancel(false));
+    }
+  }
+
+  @Override
+  public void close() {
+    if (this.executor != null) {
+      this.executor.shutdown();
+      try {
+        while (!this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+          // still waiting for running tasks to finish
+        }
+      } catch (final InterruptedException exception) {
+        this.executor.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+    this.context.remove();
+    C context;
+    while ((context = this.contexts.poll()) != null) {
+      this.disposer.accept(context);
+    }
+  }
+
+  private C createContext() {
+    final C context = this.factory.get();
+    this.contexts.add(context);
+    return context;
+  }
+
+  private static <R> R await(final Future<R> future) throws MojoExecutionException {
+    try {
+      return future.get();
+    } catch (final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while waiting for workers", exception);
+    } catch (final ExecutionException exception) {
+      switch (exception.getCause()) {
+        case final MojoExecutionException cause -> throw cause;
+        case final RuntimeException cause -> throw cause;
+        case final Error cause -> throw cause;
+        case final Throwable cause -> throw new MojoExecutionException(cause);
+      }
+    }
+  }
+}
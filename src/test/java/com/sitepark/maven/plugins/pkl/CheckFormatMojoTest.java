@@ -1,7 +1,13 @@
 package com.sitepark.maven.plugins.pkl;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.junit.jupiter.api.Assertions;
@@ -40,6 +46,94 @@ public final class CheckFormatMojoTest {
     Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
   }
 
+  @Test
+  public void testDiffLimit() throws MojoFailureException, MojoExecutionException {
+    final var expected =
+"""
+\\[ERROR\\] Error in src/test/resources/pkl/tests/unformatted.pkl
+\\[ERROR\\]  2 [ ]
+\\[ERROR\\]  3 -        local example = new Dynamic \\{
+\\[ERROR\\]  3 \\+local example = new Dynamic \\{
+\\[ERROR\\]  4    foo = "bar"
+\\[ERROR\\] ... 2 more hunks omitted
+\\[ERROR\\]
+""";
+    final var log = new CapturingLog();
+    final var mojo = new CheckFormatMojo();
+    mojo.grammarVersion = "latest";
+    mojo.paths = Set.of(Paths.get(PKL_DIR).resolve("unformatted.pkl").toString());
+    mojo.diffHunksPerFile = 1;
+    mojo.setLog(log);
+    Assertions.assertThrows(MojoFailureException.class, mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+  }
+
+  @Test
+  public void testReportFiles() throws MojoFailureException, MojoExecutionException {
+    final var expected =
+"""
+\\[ERROR\\] Error in src/test/resources/pkl/tests/unformatted.pkl
+""";
+    final var log = new CapturingLog();
+    final var mojo = new CheckFormatMojo();
+    mojo.grammarVersion = "latest";
+    mojo.paths =
+        Set.of(
+            Paths.get(PKL_DIR).resolve("formatted.pkl").toString(),
+            Paths.get(PKL_DIR).resolve("unformatted.pkl").toString());
+    mojo.report = "files";
+    mojo.setLog(log);
+    Assertions.assertThrows(MojoFailureException.class, mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+  }
+
+  @Test
+  public void testFailFast() throws MojoFailureException, MojoExecutionException, IOException {
+    final var expected =
+"""
+\\[ERROR\\] Error in target/tests/pkl/failFast/first.pkl
+\\[INFO\\] Skipped 1 remaining file
+""";
+    final var directory = Path.of("target/tests/pkl/failFast");
+    Files.createDirectories(directory);
+    for (final var name : List.of("first.pkl", "second.pkl")) {
+      Files.copy(
+          Paths.get(PKL_DIR).resolve("unformatted.pkl"),
+          directory.resolve(name),
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+    final var log = new CapturingLog();
+    final var mojo = new CheckFormatMojo();
+    mojo.grammarVersion = "latest";
+    mojo.paths = Set.of(directory.toString());
+    mojo.report = "files";
+    mojo.failFast = true;
+    mojo.setLog(log);
+    Assertions.assertThrows(MojoFailureException.class, mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+  }
+
+  @Test
+  public void testParallel() throws MojoFailureException, MojoExecutionException {
+    final var expected =
+"""
+\\[ERROR\\] Error in src/test/resources/pkl/tests/unformatted.pkl
+>> diff >>
+\\[ERROR\\]
+""";
+    final var log = new CapturingLog();
+    final var mojo = new CheckFormatMojo();
+    mojo.grammarVersion = "latest";
+    mojo.paths =
+        Set.of(
+            Paths.get(PKL_DIR).resolve("formatted.pkl").toString(),
+            Paths.get(PKL_DIR).resolve("unformatted.pkl").toString());
+    mojo.parallelism = 2;
+    mojo.setLog(log);
+    Assertions.assertThrows(MojoFailureException.class, mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+  }
+
   @Test
   public void testFormatted() throws MojoFailureException, MojoExecutionException {
     final var expected = "";
@@ -61,4 +155,40 @@ public final class CheckFormatMojoTest {
     mojo.setLog(log);
     Assertions.assertThrows(MojoExecutionException.class, mojo::execute);
   }
+
+  @Test
+  public void testIncrementalRechecksChangedFiles()
+      throws MojoFailureException, MojoExecutionException, IOException {
+    final var stateFile = Path.of("target/tests/pkl/incremental.format-state");
+    final var file = Path.of("target/tests/pkl/incremental/checked.pkl");
+    Files.deleteIfExists(stateFile);
+    Files.createDirectories(file.getParent());
+    Files.copy(
+        Paths.get(PKL_DIR).resolve("formatted.pkl"), file, StandardCopyOption.REPLACE_EXISTING);
+    final var mojo = new CheckFormatMojo();
+    mojo.grammarVersion = "latest";
+    mojo.paths = Set.of(file.toString());
+    mojo.incremental = true;
+    mojo.stateFile = stateFile.toString();
+    mojo.setLog(new CapturingLog());
+    Assertions.assertDoesNotThrow(mojo::execute);
+    Assertions.assertTrue(
+        Files.readString(stateFile).contains(ContentHashes.of(file)),
+        "the formatted file is cached");
+
+    // the unchanged file is not formatted again
+    final var log = new CapturingLog();
+    mojo.setLog(log);
+    Assertions.assertDoesNotThrow(mojo::execute);
+    Assertions.assertLinesMatch(
+        Stream.of("\\[DEBUG\\] Skipping up-to-date target/tests/pkl/incremental/checked\\.pkl"),
+        log.captured().lines());
+
+    Files.copy(
+        Paths.get(PKL_DIR).resolve("unformatted.pkl"), file, StandardCopyOption.REPLACE_EXISTING);
+    Assertions.assertThrows(MojoFailureException.class, mojo::execute);
+    Assertions.assertFalse(
+        Files.readString(stateFile).contains(ContentHashes.of(file)),
+        "the unformatted file is not cached");
+  }
 }
@@ -1,9 +1,25 @@
 package com.sitepark.maven.plugins.pkl;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.pkl.core.EvaluatorBuilder;
+import org.pkl.core.ModuleSource;
+import org.pkl.core.PklBinaryDecoder;
+import org.pkl.core.PklException;
 
 public final class EvalMojoTest {
 
@@ -68,4 +84,438 @@ public final class EvalMojoTest {
     Assertions.assertThrows(MojoFailureException.class, mojo::execute);
     Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
   }
+
+  @Test
+  public void testParallelEvaluation() throws MojoFailureException, MojoExecutionException {
+    final var expected =
+"""
+\\[DEBUG\\] Evaluating src/test/resources/pkl/tests/multipleOutputFiles\\.pkl
+\\[INFO\\] Writing target/tests/pkl/evaluated/servers\\.yaml
+\\[INFO\\] Writing target/tests/pkl/evaluated/servers\\.xml
+\\[DEBUG\\] Evaluating src/test/resources/pkl/tests/singleOutputFile\\.pkl
+\\[INFO\\] Writing target/tests/pkl/evaluated/servers\\.json
+\\[INFO\\] Files evaluated: 2, Files created: 3, Time elapsed: \\d+[\\.,]\\d+s
+\\[INFO\\]
+""";
+    final var log = new CapturingLog();
+    final var mojo = new EvalMojo();
+    mojo.directory = PKL_DIR;
+    mojo.files = "{multiple,single}OutputFile*.pkl";
+    mojo.output = OUTPUT_DIR;
+    mojo.overwrite = true;
+    mojo.parallelism = 2;
+    mojo.setLog(log);
+    Assertions.assertDoesNotThrow(mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+  }
+
+  @Test
+  public void testConflictingOutputFiles() throws MojoFailureException, MojoExecutionException {
+    final var log = new CapturingLog();
+    final var mojo = new EvalMojo();
+    mojo.directory = PKL_DIR;
+    mojo.files = "{conflicting,single}OutputFile.pkl";
+    mojo.output = "target/tests/pkl/conflicting/";
+    mojo.overwrite = true;
+    mojo.parallelism = 2;
+    mojo.setLog(log);
+    Assertions.assertThrows(MojoExecutionException.class, mojo::execute);
+  }
+
+  @Test
+  public void testIncrementalEvaluation()
+      throws MojoFailureException, MojoExecutionException, IOException {
+    final var expected =
+"""
+\\[DEBUG\\] Skipping up-to-date src/test/resources/pkl/tests/singleOutputFile\\.pkl
+\\[INFO\\] Files evaluated: 0, Files created: 0, Modules up to date: 1, Time elapsed: \\d+[\\.,]\\d+s
+\\[INFO\\]
+""";
+    final var stateFile = Path.of("target/tests/pkl/incremental.eval-state");
+    Files.deleteIfExists(stateFile);
+    for (int run = 0; run < 2; run++) {
+      final var log = new CapturingLog();
+      final var mojo = new EvalMojo();
+      mojo.directory = PKL_DIR;
+      mojo.files = "singleOutputFile.pkl";
+      mojo.output = "target/tests/pkl/incremental/";
+      mojo.overwrite = true;
+      mojo.incremental = true;
+      mojo.stateFile = stateFile.toString();
+      mojo.setLog(log);
+      Assertions.assertDoesNotThrow(mojo::execute);
+      if (run == 1) {
+        Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+      }
+    }
+  }
+
+  @Test
+  public void testIncrementalEvaluationNoticesChangedInputs() throws IOException {
+    final var directory = Path.of("target/tests/pkl/inputs/");
+    final var stateFile = Path.of("target/tests/pkl/inputs.eval-state");
+    Files.deleteIfExists(stateFile);
+    Files.createDirectories(directory.resolve("parts"));
+    Files.deleteIfExists(directory.resolve("optional.txt"));
+    Files.deleteIfExists(directory.resolve("parts/two.txt"));
+    Files.writeString(directory.resolve("lib.pkl"), "value = \"initial\"\n");
+    Files.writeString(directory.resolve("data.txt"), "initial");
+    Files.writeString(directory.resolve("parts/one.txt"), "one");
+    Files.writeString(
+        directory.resolve("main.pkl"),
+        """
+        import "lib.pkl"
+
+        output {
+          files {
+            ["main.json"] {
+              value = new Dynamic {
+                lib = lib.value
+                data = read("data.txt").text
+                optional = read?("optional.txt")?.text
+                parts = read*("parts/*.txt").keys.toList()
+              }
+              renderer = new JsonRenderer {}
+            }
+          }
+        }
+        """);
+    Assertions.assertTrue(EvalMojoTest.evaluatesIncrementally(directory, stateFile));
+    Assertions.assertFalse(
+        EvalMojoTest.evaluatesIncrementally(directory, stateFile), "nothing changed");
+    Files.writeString(directory.resolve("lib.pkl"), "value = \"changed\"\n");
+    Assertions.assertTrue(
+        EvalMojoTest.evaluatesIncrementally(directory, stateFile), "the imported module changed");
+    Files.writeString(directory.resolve("data.txt"), "changed");
+    Assertions.assertTrue(
+        EvalMojoTest.evaluatesIncrementally(directory, stateFile), "the read resource changed");
+    Files.writeString(directory.resolve("optional.txt"), "created");
+    Assertions.assertTrue(
+        EvalMojoTest.evaluatesIncrementally(directory, stateFile),
+        "the missing resource was created");
+    Files.writeString(directory.resolve("parts/two.txt"), "two");
+    Assertions.assertTrue(
+        EvalMojoTest.evaluatesIncrementally(directory, stateFile),
+        "a resource matching the glob was created");
+    Assertions.assertFalse(
+        EvalMojoTest.evaluatesIncrementally(directory, stateFile), "nothing changed since");
+  }
+
+  /**
+   * Evaluates main.pkl incrementally and returns whether it was evaluated.
+   */
+  private static boolean evaluatesIncrementally(final Path directory, final Path stateFile) {
+    final var log = new CapturingLog();
+    final var mojo = new EvalMojo();
+    mojo.directory = directory.toString();
+    mojo.files = "main.pkl";
+    mojo.output = "target/tests/pkl/inputs-output/";
+    mojo.overwrite = true;
+    mojo.incremental = true;
+    mojo.stateFile = stateFile.toString();
+    mojo.setLog(log);
+    Assertions.assertDoesNotThrow(mojo::execute);
+    return log.captured().lines().anyMatch(line -> line.startsWith("[DEBUG] Evaluating "));
+  }
+
+  @Test
+  public void testUnchangedOutputFileIsNotWritten()
+      throws MojoFailureException, MojoExecutionException, IOException {
+    final var expected =
+"""
+\\[DEBUG\\] Evaluating src/test/resources/pkl/tests/singleOutputFile\\.pkl
+\\[INFO\\] Skip writing unchanged target/tests/pkl/unchanged/servers\\.json
+\\[INFO\\] Files evaluated: 1, Files created: 0, Files unchanged: 1, Time elapsed: \\d+[\\.,]\\d+s
+\\[INFO\\]
+""";
+    final var outputFile = Path.of("target/tests/pkl/unchanged/servers.json");
+    Files.deleteIfExists(outputFile);
+    for (int run = 0; run < 2; run++) {
+      final var log = new CapturingLog();
+      final var mojo = new EvalMojo();
+      mojo.directory = PKL_DIR;
+      mojo.files = "singleOutputFile.pkl";
+      mojo.output = "target/tests/pkl/unchanged/";
+      mojo.overwrite = true;
+      mojo.writeIfChanged = true;
+      mojo.setLog(log);
+      Assertions.assertDoesNotThrow(mojo::execute);
+      if (run == 1) {
+        Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+      }
+    }
+  }
+
+  @Test
+  public void testMetrics() throws MojoFailureException, MojoExecutionException, IOException {
+    final var expected =
+"""
+\\[DEBUG\\] Evaluating src/test/resources/pkl/tests/multipleOutputFiles\\.pkl
+\\[INFO\\] Writing target/tests/pkl/evaluated/servers\\.yaml
+\\[INFO\\] Writing target/tests/pkl/evaluated/servers\\.xml
+\\[INFO\\] Slowest modules:
+\\[INFO\\]   multipleOutputFiles\\.pkl took \\d+([\\.,]\\d+)?s.*, wrote 2 files of \\d+([\\.,]\\d+)? k?B
+\\[INFO\\] Files evaluated: 1, Files created: 2, Time elapsed: \\d+[\\.,]\\d+s
+\\[INFO\\]
+""";
+    for (final var metricsFile :
+        List.of(
+            Path.of("target/tests/pkl/metrics/eval-metrics.csv"),
+            Path.of("target/tests/pkl/metrics/eval-metrics.json"))) {
+      Files.deleteIfExists(metricsFile);
+      final var log = new CapturingLog();
+      final var mojo = new EvalMojo();
+      mojo.directory = PKL_DIR;
+      mojo.files = "multipleOutputFiles.pkl";
+      mojo.output = OUTPUT_DIR;
+      mojo.overwrite = true;
+      mojo.metricsFile = metricsFile.toString();
+      mojo.slowest = 1;
+      mojo.setLog(log);
+      Assertions.assertDoesNotThrow(mojo::execute);
+      Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+      final var metrics = Files.readString(metricsFile);
+      if (metricsFile.toString().endsWith(".json")) {
+        Assertions.assertTrue(
+            metrics.matches(
+                "(?s)\\[\\n  \\{\"module\": \"multipleOutputFiles\\.pkl\", .*"
+                    + "\"outputFiles\": 2, \"outputBytes\": \\d+\\}\\n\\]\\n"),
+            metrics);
+      } else {
+        Assertions.assertLinesMatch(
+            List.of(
+                "module,seconds,cpuSeconds,allocatedBytes,outputFiles,outputBytes",
+                "multipleOutputFiles\\.pkl,[^,]+,[^,]*,[^,]*,2,\\d+"),
+            metrics.lines().toList());
+      }
+    }
+  }
+
+  @Test
+  public void testOutputArchive() throws MojoFailureException, MojoExecutionException, IOException {
+    final var expected =
+"""
+\\[DEBUG\\] Evaluating src/test/resources/pkl/tests/multipleOutputFiles\\.pkl
+\\[DEBUG\\] Archiving servers\\.xml
+\\[DEBUG\\] Archiving servers\\.yaml
+\\[DEBUG\\] Evaluating src/test/resources/pkl/tests/singleOutputFile\\.pkl
+\\[DEBUG\\] Archiving servers\\.json
+\\[INFO\\] Writing target/tests/pkl/archive/output\\.jar with 3 files
+\\[INFO\\] Files evaluated: 2, Files created: 3, Time elapsed: \\d+[\\.,]\\d+s
+\\[INFO\\]
+""";
+    final var archive = Path.of("target/tests/pkl/archive/output.jar");
+    final List<byte[]> builds = new ArrayList<>();
+    for (int run = 0; run < 2; run++) {
+      final var log = new CapturingLog();
+      final var mojo = new EvalMojo();
+      mojo.directory = PKL_DIR;
+      mojo.files = "{multiple,single}OutputFile*.pkl";
+      mojo.outputArchive = archive.toString();
+      mojo.outputTimestamp = "2024-01-01T00:00:00Z";
+      mojo.parallelism = 2;
+      mojo.setLog(log);
+      Assertions.assertDoesNotThrow(mojo::execute);
+      Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+      builds.add(Files.readAllBytes(archive));
+    }
+    Assertions.assertArrayEquals(builds.get(0), builds.get(1), "the archive is reproducible");
+    try (final var zip = new ZipFile(archive.toFile())) {
+      Assertions.assertEquals(
+          List.of("servers.xml", "servers.yaml", "servers.json"),
+          zip.stream().map(ZipEntry::getName).toList());
+      zip.stream()
+          .forEach(
+              entry ->
+                  Assertions.assertEquals(
+                      LocalDateTime.of(2024, 1, 1, 0, 0), entry.getTimeLocal()));
+    }
+  }
+
+  @Test
+  public void testFailedBuildKeepsOutputArchive() throws IOException {
+    final var directory = Path.of("target/tests/pkl/archive-failing/");
+    final var archive = directory.resolve("output/output.zip");
+    Files.createDirectories(directory);
+    Files.deleteIfExists(directory.resolve("broken.pkl"));
+    Files.writeString(
+        directory.resolve("valid.pkl"),
+        "output { files { [\"valid.json\"] { text = \"{}\" } } }\n");
+    final var mojo = new EvalMojo();
+    mojo.directory = directory.toString();
+    mojo.files = "*.pkl";
+    mojo.outputArchive = archive.toString();
+    mojo.setLog(new CapturingLog());
+    Assertions.assertDoesNotThrow(mojo::execute);
+    final var previous = Files.readAllBytes(archive);
+    Files.writeString(directory.resolve("broken.pkl"), "foo = throw(\"broken\")\n");
+    Assertions.assertThrows(PklException.class, mojo::execute);
+    Assertions.assertArrayEquals(previous, Files.readAllBytes(archive));
+    try (final var files = Files.list(archive.getParent())) {
+      Assertions.assertEquals(List.of(archive), files.toList(), "no temporary file is left");
+    }
+  }
+
+  @Test
+  public void testPklBinaryOutput()
+      throws MojoFailureException, MojoExecutionException, IOException {
+    final var expected =
+"""
+\\[DEBUG\\] Evaluating src/test/resources/pkl/tests/singleOutputFile\\.pkl
+\\[INFO\\] Writing target/tests/pkl/binary/servers\\.json\\.pklbin
+\\[INFO\\] Files evaluated: 1, Files created: 1, Time elapsed: \\d+[\\.,]\\d+s
+\\[INFO\\]
+""";
+    final var log = new CapturingLog();
+    final var mojo = new EvalMojo();
+    mojo.directory = PKL_DIR;
+    mojo.files = "singleOutputFile.pkl";
+    mojo.output = "target/tests/pkl/binary/";
+    mojo.outputFormat = "pklBinary";
+    mojo.overwrite = true;
+    mojo.setLog(log);
+    Assertions.assertDoesNotThrow(mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+
+    // decodes to the value the text output is rendered from
+    final var decoded =
+        PklBinaryDecoder.decode(
+            Files.readAllBytes(Path.of("target/tests/pkl/binary/servers.json.pklbin")));
+    try (final var evaluator = EvaluatorBuilder.preconfigured().build()) {
+      Assertions.assertEquals(
+          evaluator.evaluateExpression(
+              ModuleSource.path(Path.of(PKL_DIR, "singleOutputFile.pkl")),
+              "output.files[\"servers.json\"].value"),
+          decoded);
+    }
+  }
+
+  @Test
+  public void testOutputFormats() throws MojoFailureException, MojoExecutionException, IOException {
+    final var expected =
+"""
+\\[DEBUG\\] Evaluating src/test/resources/pkl/tests/singleOutputFile\\.pkl
+\\[INFO\\] Writing target/tests/pkl/formats/singleOutputFile\\.json
+\\[INFO\\] Writing target/tests/pkl/formats/yaml/singleOutputFile\\.yml
+\\[INFO\\] Files evaluated: 1, Files created: 2, Time elapsed: \\d+[\\.,]\\d+s
+\\[INFO\\]
+""";
+    final var log = new CapturingLog();
+    final var mojo = new EvalMojo();
+    mojo.directory = PKL_DIR;
+    mojo.files = "singleOutputFile.pkl";
+    mojo.output = "target/tests/pkl/formats/";
+    mojo.outputFormats =
+        List.of(
+            new OutputFormat("json", null),
+            new OutputFormat("yaml", "yaml/%{moduleName}.yml"));
+    mojo.overwrite = true;
+    mojo.setLog(log);
+    Assertions.assertDoesNotThrow(mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+    Assertions.assertEquals(
+        """
+        {
+          "servers": [
+            {
+              "ip": "127.0.0.1",
+              "port": 440
+            },
+            {
+              "ip": "192.168.0.1",
+              "port": 443
+            }
+          ]
+        }""",
+        Files.readString(Path.of("target/tests/pkl/formats/singleOutputFile.json")).strip());
+    Assertions.assertEquals(
+        """
+        servers:
+        - ip: 127.0.0.1
+          port: 440
+        - ip: 192.168.0.1
+          port: 443""",
+        Files.readString(Path.of("target/tests/pkl/formats/yaml/singleOutputFile.yml")).strip());
+  }
+
+  @Test
+  public void testMatrix() throws MojoFailureException, MojoExecutionException, IOException {
+    final var expected =
+"""
+\\[DEBUG\\] Evaluating target/tests/pkl/matrix/stage\\.pkl for development
+\\[INFO\\] Writing target/tests/pkl/matrix/output/development/stage\\.json
+\\[DEBUG\\] Evaluating target/tests/pkl/matrix/stage\\.pkl for production
+\\[INFO\\] Writing target/tests/pkl/matrix/output/production/stage\\.json
+\\[INFO\\] Variant development: Files evaluated: 1, Files created: 1, Summed module time: \\d+([\\.,]\\d+)?s
+\\[INFO\\] Variant production: Files evaluated: 1, Files created: 1, Summed module time: \\d+([\\.,]\\d+)?s
+\\[INFO\\] Files evaluated: 2, Files created: 2, Time elapsed: \\d+[\\.,]\\d+s
+\\[INFO\\]
+""";
+    final var directory = Path.of("target/tests/pkl/matrix/");
+    Files.createDirectories(directory);
+    Files.writeString(
+        directory.resolve("stage.pkl"),
+        """
+        stage = read("prop:stage")
+        host = read("prop:host")
+
+        output { files { ["stage.json"] { value = module; renderer = new JsonRenderer {} } } }
+        """);
+    final var log = new CapturingLog();
+    final var mojo = new EvalMojo();
+    mojo.directory = directory.toString();
+    mojo.files = "stage.pkl";
+    mojo.output = "target/tests/pkl/matrix/output/";
+    mojo.properties = Map.of("host", "example.com");
+    mojo.matrix =
+        List.of(
+            new EvalVariant("development", Map.of("stage", "development"), Map.of()),
+            new EvalVariant(
+                "production", Map.of("stage", "production", "host", "sitepark.com"), Map.of()));
+    mojo.parallelism = 2;
+    mojo.setLog(log);
+    Assertions.assertDoesNotThrow(mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+    Assertions.assertEquals(
+        """
+        {
+          "stage": "development",
+          "host": "example.com"
+        }""",
+        Files.readString(Path.of("target/tests/pkl/matrix/output/development/stage.json")).strip());
+    Assertions.assertEquals(
+        """
+        {
+          "stage": "production",
+          "host": "sitepark.com"
+        }""",
+        Files.readString(Path.of("target/tests/pkl/matrix/output/production/stage.json")).strip());
+  }
+
+  @Test
+  public void testOfflineDoesNotDownloadPackages() throws IOException {
+    // stands in for a package repository, any connection attempt is queued
+    try (final var repository = ServerSocketChannel.open()) {
+      repository.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      repository.configureBlocking(false);
+      final var port = ((InetSocketAddress) repository.getLocalAddress()).getPort();
+      final var directory = Path.of("target/tests/pkl/offline/");
+      Files.createDirectories(directory);
+      Files.writeString(
+          directory.resolve("packageImport.pkl"),
+          "import \"package://localhost:"
+              + port
+              + "/pkl-maven-plugin/fixture@1.0.0#/fixture.pkl\"\n\n"
+              + "output { files { [\"fixture.json\"] = fixture.output } }\n");
+      final var mojo = new EvalMojo();
+      mojo.directory = directory.toString();
+      mojo.files = "packageImport.pkl";
+      mojo.output = "target/tests/pkl/offline/output/";
+      mojo.moduleCacheDir = directory.resolve("cache").toString();
+      mojo.offline = true;
+      mojo.setLog(new CapturingLog());
+      Assertions.assertThrows(PklException.class, mojo::execute);
+      Assertions.assertNull(repository.accept(), "no package was requested");
+    }
+  }
 }
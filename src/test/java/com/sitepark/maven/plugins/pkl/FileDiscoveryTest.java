@@ -0,0 +1,133 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public final class FileDiscoveryTest {
+
+  private static final Path DIRECTORY = Path.of("target/tests/discovery");
+
+  @BeforeAll
+  public static void createFiles() throws IOException {
+    for (final var file :
+        List.of(
+            "top.pkl",
+            "a/one.pkl",
+            "a/b/two.pkl",
+            "a/b/c/d/e/f/g/h/i/deep.pkl",
+            "a/b/readme.md",
+            "target/generated.pkl",
+            "a/node_modules/module.pkl",
+            "src/pkl/main.pkl")) {
+      final var path = DIRECTORY.resolve(file);
+      Files.createDirectories(path.getParent());
+      Files.writeString(path, "");
+    }
+  }
+
+  @Test
+  public void testMatchesRelativeToDirectory() throws IOException {
+    Assertions.assertEquals(
+        this.paths("top.pkl"), this.find(List.of("*.pkl"), FileDiscovery.DEFAULT_EXCLUDES));
+    Assertions.assertEquals(
+        this.paths("a/b/two.pkl"),
+        this.find(List.of("a/*/*.pkl"), FileDiscovery.DEFAULT_EXCLUDES));
+  }
+
+  @Test
+  public void testWalksWithoutDepthLimitInOrder() throws IOException {
+    Assertions.assertEquals(
+        this.paths(
+            "a/b/c/d/e/f/g/h/i/deep.pkl",
+            "a/b/two.pkl",
+            "a/one.pkl",
+            "src/pkl/main.pkl",
+            "top.pkl"),
+        this.find(List.of("**.pkl"), FileDiscovery.DEFAULT_EXCLUDES));
+  }
+
+  @Test
+  public void testExcludes() throws IOException {
+    Assertions.assertEquals(
+        this.paths(
+            "a/b/c/d/e/f/g/h/i/deep.pkl",
+            "a/b/two.pkl",
+            "a/node_modules/module.pkl",
+            "a/one.pkl",
+            "src/pkl/main.pkl",
+            "target/generated.pkl",
+            "top.pkl"),
+        this.find(List.of("**.pkl"), List.of()));
+    Assertions.assertEquals(
+        this.paths(
+            "a/node_modules/module.pkl", "a/one.pkl", "target/generated.pkl", "top.pkl"),
+        this.find(List.of("**.pkl"), FileDiscovery.excludes(List.of("**/b", "src"), false)));
+    // given excludes add to the defaults
+    Assertions.assertEquals(
+        this.paths("a/one.pkl", "top.pkl"),
+        this.find(List.of("**.pkl"), FileDiscovery.excludes(List.of("**/b", "src"), true)));
+  }
+
+  @Test
+  public void testMultipleIncludes() throws IOException {
+    Assertions.assertEquals(
+        this.paths("a/one.pkl", "src/pkl/main.pkl", "top.pkl"),
+        this.find(
+            List.of("src/**.pkl", "*.pkl", "{a,src}/*.pkl"), FileDiscovery.DEFAULT_EXCLUDES));
+  }
+
+  @Test
+  public void testFailureWithFullQueueEndsTheFiles() throws IOException {
+    final var directory = Path.of("target/tests/discovery-failure");
+    final var locked = directory.resolve("b");
+    Files.createDirectories(locked);
+    Files.writeString(directory.resolve("a.pkl"), "");
+    Files.setPosixFilePermissions(locked, Set.of());
+    try {
+      Assumptions.assumeFalse(Files.isReadable(locked), "permissions are enforced");
+      // the only place in the queue is taken by a.pkl when listing b fails
+      try (final var running =
+          new FileDiscovery(List.of("**.pkl"), List.of()).start(directory, 1)) {
+        FileDiscoveryTest.awaitDiscovery();
+        Assertions.assertTimeoutPreemptively(
+            Duration.ofSeconds(10),
+            () ->
+                Assertions.assertThrows(
+                    UncheckedIOException.class, () -> running.forEach(file -> {})));
+      }
+    } finally {
+      Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwxr-xr-x"));
+    }
+  }
+
+  /**
+   * Waits for the background discovery to end, before any of its files are consumed.
+   */
+  private static void awaitDiscovery() {
+    final var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+    while (Thread.getAllStackTraces().keySet().stream()
+            .anyMatch(thread -> thread.getName().equals("pkl-discovery"))
+        && System.nanoTime() < deadline) {
+      Thread.onSpinWait();
+    }
+  }
+
+  private List<Path> find(final List<String> includes, final List<String> excludes)
+      throws IOException {
+    return new FileDiscovery(includes, excludes).find(DIRECTORY);
+  }
+
+  private List<Path> paths(final String... files) {
+    return List.of(files).stream().map(DIRECTORY::resolve).toList();
+  }
+}
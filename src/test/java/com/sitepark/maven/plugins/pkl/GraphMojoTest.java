@@ -0,0 +1,47 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class GraphMojoTest {
+
+  private static final String PKL_DIR = "src/test/resources/pkl/graph/";
+
+  @Test
+  public void testGraph() throws MojoFailureException, MojoExecutionException, IOException {
+    final var expected =
+"""
+\\[INFO\\] src/test/resources/pkl/graph/app\\.pkl imports 1 module, imported by 0 modules
+\\[INFO\\] src/test/resources/pkl/graph/base\\.pkl imports 0 modules, imported by 3 modules
+\\[INFO\\] src/test/resources/pkl/graph/client\\.pkl imports 1 module, imported by 0 modules
+\\[INFO\\] src/test/resources/pkl/graph/server\\.pkl imports 1 module, imported by 1 module
+\\[INFO\\]
+\\[INFO\\] Modules imported by most others:
+\\[INFO\\]   .*src/test/resources/pkl/graph/base\\.pkl \\(3\\)
+\\[INFO\\]
+\\[INFO\\] Writing target/tests/pkl/graph/import-graph\\.properties
+""";
+    final var graphFile = Path.of("target/tests/pkl/graph/import-graph.properties");
+    Files.deleteIfExists(graphFile);
+    final var log = new CapturingLog();
+    final var mojo = new GraphMojo();
+    mojo.directory = PKL_DIR;
+    mojo.files = "*.pkl";
+    mojo.graphFile = graphFile.toString();
+    mojo.color = false;
+    mojo.setLog(log);
+    Assertions.assertDoesNotThrow(mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+
+    final var base = Path.of(PKL_DIR, "base.pkl").toAbsolutePath().normalize().toUri();
+    final var stored = ImportGraph.load(graphFile);
+    Assertions.assertEquals(List.of(base), stored.mostShared(10));
+    Assertions.assertEquals(3, stored.dependents().get(base).intValue());
+  }
+}
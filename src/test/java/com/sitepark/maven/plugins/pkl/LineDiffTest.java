@@ -0,0 +1,64 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class LineDiffTest {
+
+  private static List<LineDiff.Change> diff(
+      final List<String> original, final List<String> revised) {
+    final List<LineDiff.Change> changes = new ArrayList<>();
+    LineDiff.diff(original, revised, changes::add);
+    return changes;
+  }
+
+  @Test
+  public void testEqualLinesHaveNoChanges() {
+    Assertions.assertEquals(List.of(), diff(List.of("a", "b"), List.of("a", "b")));
+  }
+
+  @Test
+  public void testChangesAreInOrder() {
+    Assertions.assertEquals(
+        List.of(new LineDiff.Change(1, 2, 1, 2), new LineDiff.Change(3, 5, 3, 4)),
+        diff(List.of("a", "b", "c", "d", "e", "f"), List.of("a", "B", "c", "DE", "f")));
+  }
+
+  @Test
+  public void testInsertionsAndDeletions() {
+    Assertions.assertEquals(
+        List.of(new LineDiff.Change(0, 0, 0, 1), new LineDiff.Change(2, 3, 3, 3)),
+        diff(List.of("a", "b", "c"), List.of("x", "a", "b")));
+  }
+
+  @Test
+  public void testChangesAreMinimal() {
+    final var changes =
+        diff(List.of("a", "b", "c", "a", "b", "b", "a"), List.of("c", "b", "a", "b", "a", "c"));
+    final var edits =
+        changes.stream()
+            .mapToInt(
+                change ->
+                    change.originalEnd()
+                        - change.originalStart()
+                        + change.revisedEnd()
+                        - change.revisedStart())
+            .sum();
+    Assertions.assertEquals(5, edits);
+  }
+
+  @Test
+  public void testVeryDifferentLinesAreCompared() {
+    final List<String> original = new ArrayList<>();
+    final List<String> revised = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      original.add("line " + i);
+      revised.add(i % 2 == 0 ? "changed " + i : "line " + i);
+    }
+    final var changes = diff(original, revised);
+    Assertions.assertEquals(5_000, changes.size());
+    Assertions.assertEquals(new LineDiff.Change(9_998, 9_999, 9_998, 9_999), changes.getLast());
+  }
+}
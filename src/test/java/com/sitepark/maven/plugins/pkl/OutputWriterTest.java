@@ -0,0 +1,85 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class OutputWriterTest {
+
+  private static final Path DIRECTORY = Path.of("target/tests/output-writer");
+
+  @Test
+  public void testWritesMoreFilesThanItsCapacity() throws IOException, MojoExecutionException {
+    final List<OutputWriter.Write> writes = new ArrayList<>();
+    try (final var writer = new OutputWriter(true, true, 2)) {
+      for (int i = 0; i < 10; i++) {
+        writes.add(
+            writer.write(
+                DIRECTORY.resolve("nested/" + i % 3 + "/" + i + ".txt"),
+                new OutputContent.Text("" + i)));
+      }
+    }
+    for (int i = 0; i < 10; i++) {
+      Assertions.assertTrue(writes.get(i).isDone());
+      Assertions.assertEquals(
+          "" + i, Files.readString(DIRECTORY.resolve("nested/" + i % 3 + "/" + i + ".txt")));
+    }
+  }
+
+  @Test
+  public void testUnchangedAndExistingFilesAreLeftUntouched()
+      throws IOException, MojoExecutionException {
+    final var file = DIRECTORY.resolve("existing.txt");
+    Files.createDirectories(DIRECTORY);
+    Files.writeString(file, "text");
+    try (final var writer = new OutputWriter(true, true, 1)) {
+      Assertions.assertEquals(
+          OutputWriter.Outcome.UNCHANGED,
+          writer.write(file, new OutputContent.Text("text")).await());
+      Assertions.assertEquals(
+          OutputWriter.Outcome.WRITTEN,
+          writer.write(file, new OutputContent.Text("other")).await());
+    }
+    try (final var writer = new OutputWriter(false, true, 1)) {
+      Assertions.assertEquals(
+          OutputWriter.Outcome.SKIPPED, writer.write(file, new OutputContent.Text("text")).await());
+    }
+    Assertions.assertEquals("other", Files.readString(file));
+  }
+
+  @Test
+  public void testUnchangedBinaryFilesAreLeftUntouched()
+      throws IOException, MojoExecutionException {
+    final var file = DIRECTORY.resolve("existing.pklbin");
+    Files.createDirectories(DIRECTORY);
+    Files.write(file, new byte[] {1, 2, 3});
+    try (final var writer = new OutputWriter(true, true, 1)) {
+      Assertions.assertEquals(
+          OutputWriter.Outcome.UNCHANGED,
+          writer.write(file, new OutputContent.Binary(new byte[] {1, 2, 3})).await());
+      Assertions.assertEquals(
+          OutputWriter.Outcome.WRITTEN,
+          writer.write(file, new OutputContent.Binary(new byte[] {1, 2, 4})).await());
+    }
+    Assertions.assertArrayEquals(new byte[] {1, 2, 4}, Files.readAllBytes(file));
+  }
+
+  @Test
+  public void testFailuresNameTheFile() throws IOException, MojoExecutionException {
+    // a file can not be the parent directory of another one
+    final var parent = DIRECTORY.resolve("file.txt");
+    Files.createDirectories(DIRECTORY);
+    Files.writeString(parent, "");
+    final var file = parent.resolve("child.txt");
+    try (final var writer = new OutputWriter(true, true, 1)) {
+      final var write = writer.write(file, new OutputContent.Text("text"));
+      final var exception = Assertions.assertThrows(MojoExecutionException.class, write::await);
+      Assertions.assertEquals("Failed to write " + file, exception.getMessage());
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import org.pkl.core.ModuleSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class SessionEvaluatorsTest {
+
+  private static final EvaluatorSettings SETTINGS =
+      new EvaluatorSettings(Set.of(), Map.of("foo", "bar"), Map.of(), null, false, false);
+
+  @Test
+  public void testReusesReleasedEvaluator() {
+    final var session = new Object();
+    final var evaluators = SessionEvaluators.of(session);
+    Assertions.assertSame(evaluators, SessionEvaluators.of(session));
+    final var evaluator = evaluators.acquire(SETTINGS);
+    evaluators.release(evaluator);
+    final var reused = evaluators.acquire(SETTINGS);
+    Assertions.assertSame(evaluator, reused);
+    final var other =
+        evaluators.acquire(new EvaluatorSettings(Set.of(), Map.of(), Map.of(), null, false, false));
+    Assertions.assertNotSame(evaluator, other);
+    evaluators.release(reused);
+    evaluators.release(other);
+  }
+
+  @Test
+  public void testReplacesEvaluatorWhenReadModuleChanged() throws IOException {
+    final var module = Path.of("target/tests/pkl/session/module.pkl");
+    Files.createDirectories(module.getParent());
+    Files.writeString(module, "value = 1\n");
+    final var evaluators = SessionEvaluators.of(new Object());
+    final var evaluator = evaluators.acquire(SETTINGS);
+    evaluator.evaluator().evaluateOutputText(ModuleSource.path(module));
+    evaluators.release(evaluator);
+    final var unchanged = evaluators.acquire(SETTINGS);
+    Assertions.assertSame(evaluator, unchanged, "an evaluator with unchanged input is reused");
+    evaluators.release(unchanged);
+    Files.writeString(module, "value = 2\n");
+    final var changed = evaluators.acquire(SETTINGS);
+    Assertions.assertNotSame(evaluator, changed, "an evaluator with changed input is replaced");
+    Assertions.assertTrue(
+        changed.evaluator().evaluateOutputText(ModuleSource.path(module)).contains("2"));
+    evaluators.release(changed);
+  }
+
+  @Test
+  public void testClosesEvaluatorsBeyondLimit() {
+    final var evaluators = SessionEvaluators.of(new Object());
+    final var acquired = new ArrayList<SharedEvaluator>();
+    for (int i = 0; i <= SessionEvaluators.MAX_IDLE; i++) {
+      acquired.add(evaluators.acquire(SETTINGS));
+    }
+    acquired.forEach(evaluators::release);
+    final var reacquired = new ArrayList<SharedEvaluator>();
+    for (int i = 0; i <= SessionEvaluators.MAX_IDLE; i++) {
+      reacquired.add(evaluators.acquire(SETTINGS));
+    }
+    Assertions.assertEquals(
+        SessionEvaluators.MAX_IDLE,
+        reacquired.stream().filter(acquired::contains).count(),
+        "only the limit of idle evaluators is kept");
+    reacquired.forEach(evaluators::release);
+  }
+
+  @Test
+  public void testDoesNotShareWithoutSession() {
+    final var evaluators = SessionEvaluators.of(null);
+    final var evaluator = evaluators.acquire(SETTINGS);
+    evaluators.release(evaluator);
+    final var other = evaluators.acquire(SETTINGS);
+    Assertions.assertNotSame(evaluator, other);
+    evaluators.release(other);
+  }
+}
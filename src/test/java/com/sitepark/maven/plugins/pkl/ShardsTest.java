@@ -0,0 +1,46 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class ShardsTest {
+
+  private static final List<String> ITEMS = List.of("a", "b", "c", "d", "e");
+
+  @Test
+  public void testWithoutWeightsItemsAreAssignedInTurns() {
+    Assertions.assertEquals(
+        List.of("a", "c", "e"), Shards.select(ITEMS, item -> OptionalDouble.empty(), 1, 2));
+    Assertions.assertEquals(
+        List.of("b", "d"), Shards.select(ITEMS, item -> OptionalDouble.empty(), 2, 2));
+  }
+
+  @Test
+  public void testWeightsAreBalanced() {
+    // "e" counts as the average of the known weights
+    final var weights = Map.of("a", 1.0, "b", 1.0, "c", 8.0, "d", 2.0);
+    final var shards =
+        List.of(1, 2, 3).stream()
+            .map(
+                index ->
+                    Shards.select(
+                        ITEMS,
+                        item ->
+                            weights.containsKey(item)
+                                ? OptionalDouble.of(weights.get(item))
+                                : OptionalDouble.empty(),
+                        index,
+                        3))
+            .toList();
+    Assertions.assertEquals(List.of(List.of("c"), List.of("b", "e"), List.of("a", "d")), shards);
+  }
+
+  @Test
+  public void testShardsMayBeEmpty() {
+    Assertions.assertEquals(
+        List.of(), Shards.select(List.of("a"), item -> OptionalDouble.empty(), 3, 3));
+  }
+}
@@ -1,5 +1,10 @@
 package com.sitepark.maven.plugins.pkl;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.junit.jupiter.api.Assertions;
@@ -83,4 +88,239 @@ public final class TestMojoTest {
     Assertions.assertThrows(MojoFailureException.class, mojo::execute);
     Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
   }
+
+  @Test
+  public void testParallelOutputIsGrouped() throws MojoFailureException, MojoExecutionException {
+    final var expected =
+"""
+\\[INFO\\]
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\]  T E S T S
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\] Running src/test/resources/pkl/tests/failingTests\\.pkl
+\\[ERROR\\] Tests run: 2, Failures: 3, Errors: 0, Skipped: 0, Time elapsed: \\d+[\\.,]\\d+s <<< FAILURES! - in com\\.sitepark\\.maven\\.plugins\\.pkl\\.failingTests
+>> failure details >>
+\\[INFO\\] Running src/test/resources/pkl/tests/succeedingTests\\.pkl
+\\[INFO\\] Tests run: 1, Failures: 0, Errors: 0, Skipped: 0, Time elapsed: \\d+[\\.,]\\d+s in com\\.sitepark\\.maven\\.plugins\\.pkl\\.succeedingTests
+\\[INFO\\]
+\\[INFO\\] Results:
+\\[INFO\\]
+\\[ERROR\\] Failures:
+>> failures >>
+\\[INFO\\]
+\\[ERROR\\] Tests run: 3, Failures: 3, Errors: 0, Skipped: 0
+\\[INFO\\]
+""";
+    final var log = new CapturingLog();
+    final var mojo = new TestMojo();
+    mojo.directory = PKL_DIR;
+    mojo.files = "{failing,succeeding}Tests.pkl";
+    mojo.color = false;
+    mojo.parallelism = 2;
+    mojo.setLog(log);
+    Assertions.assertThrows(MojoFailureException.class, mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+  }
+
+  @Test
+  public void testIncrementalRun()
+      throws MojoFailureException, MojoExecutionException, IOException {
+    final var expected =
+"""
+\\[INFO\\]
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\]  T E S T S
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\] Tests run: 1, Failures: 0, Errors: 0, Skipped: 0, up to date in com\\.sitepark\\.maven\\.plugins\\.pkl\\.succeedingTests
+\\[INFO\\]
+\\[INFO\\] Results:
+\\[INFO\\]
+\\[INFO\\] Tests run: 1, Failures: 0, Errors: 0, Skipped: 0
+\\[INFO\\]
+""";
+    final var stateFile = Path.of("target/tests/pkl/incremental.test-state");
+    Files.deleteIfExists(stateFile);
+    for (int run = 0; run < 2; run++) {
+      final var log = new CapturingLog();
+      final var mojo = new TestMojo();
+      mojo.directory = PKL_DIR;
+      mojo.files = "succeedingTests.pkl";
+      mojo.color = false;
+      mojo.incremental = true;
+      mojo.stateFile = stateFile.toString();
+      mojo.setLog(log);
+      Assertions.assertDoesNotThrow(mojo::execute);
+      if (run == 1) {
+        Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+      }
+    }
+  }
+
+  @Test
+  public void testChangedFilesSelectAffectedTests()
+      throws MojoFailureException, MojoExecutionException {
+    final var expected =
+"""
+\\[INFO\\]
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\]  T E S T S
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\] Running 1 of 3 test modules affected by the changed files
+\\[INFO\\] Running src/test/resources/pkl/tests/succeedingTests\\.pkl
+\\[INFO\\] Tests run: 1, Failures: 0, Errors: 0, Skipped: 0, Time elapsed: \\d+[\\.,]\\d+s in com\\.sitepark\\.maven\\.plugins\\.pkl\\.succeedingTests
+\\[INFO\\]
+\\[INFO\\] Results:
+\\[INFO\\]
+\\[INFO\\] Tests run: 1, Failures: 0, Errors: 0, Skipped: 0
+\\[INFO\\]
+""";
+    final var log = new CapturingLog();
+    final var mojo = new TestMojo();
+    mojo.directory = PKL_DIR;
+    mojo.files = "*Tests.pkl";
+    mojo.changedFiles = Set.of(PKL_DIR + "succeedingTests.pkl");
+    mojo.color = false;
+    mojo.setLog(log);
+    Assertions.assertDoesNotThrow(mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+  }
+
+  @Test
+  public void testUnrelatedChangedModulesRunNoTests()
+      throws MojoFailureException, MojoExecutionException {
+    final var expected =
+"""
+\\[INFO\\]
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\]  T E S T S
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\] Running 0 of 3 test modules affected by the changed files
+""";
+    final var log = new CapturingLog();
+    final var mojo = new TestMojo();
+    mojo.directory = PKL_DIR;
+    mojo.files = "*Tests.pkl";
+    mojo.changedFiles = Set.of(PKL_DIR + "formatted.pkl");
+    mojo.color = false;
+    mojo.setLog(log);
+    Assertions.assertDoesNotThrow(mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+  }
+
+  @Test
+  public void testChangedFilesRunUnrecordedTests()
+      throws MojoFailureException, MojoExecutionException {
+    final var expected =
+"""
+\\[INFO\\]
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\]  T E S T S
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\] Running 1 of 1 test modules affected by the changed files
+\\[INFO\\] Running src/test/resources/pkl/tests/succeedingTests\\.pkl
+\\[INFO\\] Tests run: 1, Failures: 0, Errors: 0, Skipped: 0, Time elapsed: \\d+[\\.,]\\d+s in com\\.sitepark\\.maven\\.plugins\\.pkl\\.succeedingTests
+\\[INFO\\]
+\\[INFO\\] Results:
+\\[INFO\\]
+\\[INFO\\] Tests run: 1, Failures: 0, Errors: 0, Skipped: 0
+\\[INFO\\]
+""";
+    final var log = new CapturingLog();
+    final var mojo = new TestMojo();
+    mojo.directory = PKL_DIR;
+    mojo.files = "succeedingTests.pkl";
+    mojo.changedFiles = Set.of("README.md");
+    mojo.color = false;
+    mojo.setLog(log);
+    Assertions.assertDoesNotThrow(mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+  }
+
+  @Test
+  public void testChangedResourcesSelectTestsReadingThem()
+      throws MojoFailureException, MojoExecutionException, IOException {
+    final var expected =
+"""
+\\[INFO\\]
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\]  T E S T S
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\] Running 1 of 2 test modules affected by the changed files
+\\[INFO\\] Tests run: 1, Failures: 0, Errors: 0, Skipped: 0, up to date in com\\.sitepark\\.maven\\.plugins\\.pkl\\.readingTests
+\\[INFO\\]
+\\[INFO\\] Results:
+\\[INFO\\]
+\\[INFO\\] Tests run: 1, Failures: 0, Errors: 0, Skipped: 0
+\\[INFO\\]
+""";
+    final var directory = Path.of("target/tests/pkl/resources/");
+    final var stateFile = Path.of("target/tests/pkl/resources.test-state");
+    Files.createDirectories(directory);
+    Files.deleteIfExists(stateFile);
+    Files.writeString(directory.resolve("data.txt"), "data");
+    Files.writeString(
+        directory.resolve("readingTests.pkl"),
+        """
+        module com.sitepark.maven.plugins.pkl.readingTests
+
+        amends "pkl:test"
+
+        facts { ["reads the data"] { read("data.txt").text == "data" } }
+        """);
+    Files.copy(
+        Path.of(PKL_DIR, "succeedingTests.pkl"),
+        directory.resolve("succeedingTests.pkl"),
+        StandardCopyOption.REPLACE_EXISTING);
+    for (int run = 0; run < 2; run++) {
+      final var log = new CapturingLog();
+      final var mojo = new TestMojo();
+      mojo.directory = directory.toString();
+      mojo.files = "*Tests.pkl";
+      mojo.color = false;
+      mojo.incremental = true;
+      mojo.stateFile = stateFile.toString();
+      if (run == 1) {
+        mojo.changedFiles = Set.of(directory.resolve("data.txt").toString());
+      }
+      mojo.setLog(log);
+      Assertions.assertDoesNotThrow(mojo::execute);
+      if (run == 1) {
+        Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+      }
+    }
+  }
+
+  @Test
+  public void testEmptyShardDoesNotFail() throws MojoFailureException, MojoExecutionException {
+    final var expected =
+"""
+\\[INFO\\]
+\\[INFO\\] -------------------------------------------------------
+\\[INFO\\]  T E S T S
+\\[INFO\\] -------------------------------------------------------
+\\[WARN\\] shardTimingsFile is not set, shards are split by the number of test modules
+\\[INFO\\] Running shard 2 of 2 with 0 of 1 test modules
+""";
+    final var log = new CapturingLog();
+    final var mojo = new TestMojo();
+    mojo.directory = PKL_DIR;
+    mojo.files = "succeedingTests.pkl";
+    mojo.shardIndex = 2;
+    mojo.shardCount = 2;
+    mojo.color = false;
+    mojo.setLog(log);
+    Assertions.assertDoesNotThrow(mojo::execute);
+    Assertions.assertLinesMatch(expected.lines(), log.captured().lines());
+  }
+
+  @Test
+  public void testInvalidShard() {
+    final var mojo = new TestMojo();
+    mojo.directory = PKL_DIR;
+    mojo.files = "succeedingTests.pkl";
+    mojo.shardIndex = 3;
+    mojo.shardCount = 2;
+    mojo.setLog(new CapturingLog());
+    Assertions.assertThrows(MojoFailureException.class, mojo::execute);
+  }
 }
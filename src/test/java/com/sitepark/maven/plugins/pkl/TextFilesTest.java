@@ -0,0 +1,51 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class TextFilesTest {
+
+  private static final Path FILE = Path.of("target/tests/text-files.txt");
+
+  // chunks small enough to split multi-byte characters
+  private static final int BUFFER_SIZE = 5;
+
+  private static final List<String> TEXTS =
+      List.of(
+          "",
+          "a",
+          "héllo wörld € 😀\n".repeat(20),
+          "unpaired \uD800 surrogate",
+          "😀".repeat(33));
+
+  @Test
+  public void testWriteEncodesInChunks() throws IOException {
+    Files.createDirectories(FILE.getParent());
+    final var files = new TextFiles(BUFFER_SIZE);
+    for (final var text : TEXTS) {
+      files.write(FILE, text);
+      Assertions.assertArrayEquals(
+          text.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(FILE), text);
+    }
+  }
+
+  @Test
+  public void testHasContent() throws IOException {
+    Files.createDirectories(FILE.getParent());
+    final var files = new TextFiles(BUFFER_SIZE);
+    for (final var text : TEXTS) {
+      Files.write(FILE, text.getBytes(StandardCharsets.UTF_8));
+      Assertions.assertTrue(files.hasContent(FILE, text), text);
+      if (!text.isEmpty()) {
+        Assertions.assertFalse(
+            files.hasContent(FILE, text.substring(0, text.length() - 1) + "?"), text);
+      }
+      Assertions.assertFalse(files.hasContent(FILE, text + "?"), text);
+    }
+  }
+}
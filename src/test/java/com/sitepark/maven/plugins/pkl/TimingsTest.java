@@ -0,0 +1,82 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.OptionalDouble;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class TimingsTest {
+
+  private static final Path TIMINGS_FILE = Path.of("target/tests/timings/test-timings");
+
+  @Test
+  public void testTimingsArePersisted() throws IOException {
+    Files.deleteIfExists(TIMINGS_FILE);
+    final var timings = Timings.load(TIMINGS_FILE);
+    Assertions.assertTrue(timings.isEmpty());
+    timings.put("a.pkl", new Timings.Timing(2.5, OptionalDouble.of(2)));
+    timings.put("b.pkl", new Timings.Timing(0.5, OptionalDouble.empty()));
+    timings.store();
+
+    final var loaded = Timings.load(TIMINGS_FILE);
+    Assertions.assertEquals(
+        new Timings.Timing(2.5, OptionalDouble.of(2)), loaded.get("a.pkl").orElseThrow());
+    Assertions.assertEquals(
+        new Timings.Timing(0.5, OptionalDouble.empty()), loaded.get("b.pkl").orElseThrow());
+    // unknown modules are expected to take as long as the average one
+    Assertions.assertEquals(1.5, loaded.expectedSeconds("c.pkl"));
+  }
+
+  @Test
+  public void testTimingsOfModulesNotRunAreKept() throws IOException {
+    Files.deleteIfExists(TIMINGS_FILE);
+    final var timings = Timings.load(TIMINGS_FILE);
+    timings.put("a.pkl", new Timings.Timing(1, OptionalDouble.empty()));
+    timings.put("b.pkl", new Timings.Timing(1, OptionalDouble.empty()));
+    timings.store();
+
+    final var next = Timings.load(TIMINGS_FILE);
+    next.put("b.pkl", new Timings.Timing(4, OptionalDouble.empty()));
+    next.store();
+
+    final var loaded = Timings.load(TIMINGS_FILE);
+    Assertions.assertEquals(1, loaded.expectedSeconds("a.pkl"));
+    Assertions.assertEquals(4, loaded.expectedSeconds("b.pkl"));
+  }
+
+  @Test
+  public void testDeviations() throws IOException {
+    Files.deleteIfExists(TIMINGS_FILE);
+    final var timings = Timings.load(TIMINGS_FILE);
+    timings.put("fast.pkl", new Timings.Timing(0.1, OptionalDouble.empty()));
+    timings.put("slow.pkl", new Timings.Timing(2, OptionalDouble.empty()));
+    timings.put("steady.pkl", new Timings.Timing(10, OptionalDouble.empty()));
+    timings.store();
+
+    final var next = Timings.load(TIMINGS_FILE);
+    next.put("fast.pkl", new Timings.Timing(0.3, OptionalDouble.empty()));
+    next.put("new.pkl", new Timings.Timing(1, OptionalDouble.empty()));
+    next.put("slow.pkl", new Timings.Timing(5, OptionalDouble.empty()));
+    next.put("steady.pkl", new Timings.Timing(11, OptionalDouble.empty()));
+    final var deviations = next.deviations();
+    Assertions.assertEquals(
+        List.of("fast.pkl", "slow.pkl", "steady.pkl"),
+        deviations.stream().map(Timings.Deviation::key).toList());
+    Assertions.assertEquals(
+        List.of("slow.pkl"),
+        deviations.stream()
+            .filter(Timings.Deviation::isNotable)
+            .map(Timings.Deviation::key)
+            .toList());
+  }
+
+  @Test
+  public void testKeyIsRelativeToTheDirectory() {
+    Assertions.assertEquals(
+        "nested/module.pkl",
+        Timings.key(Path.of("src/pkl"), Path.of("src/pkl/nested/module.pkl")));
+  }
+}
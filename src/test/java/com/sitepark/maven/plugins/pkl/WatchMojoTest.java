@@ -0,0 +1,136 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class WatchMojoTest {
+
+  private static final Path DIRECTORY = Path.of("target/tests/pkl/watch/");
+
+  @Test
+  public void testChangedModulesAreEvaluatedAgain() throws IOException, InterruptedException {
+    final var module = DIRECTORY.resolve("value.pkl");
+    final var outputFile = DIRECTORY.resolve("output/value.json");
+    Files.createDirectories(DIRECTORY);
+    Files.writeString(module, WatchMojoTest.module("initial"));
+    Files.deleteIfExists(outputFile);
+    final var log = new CapturingLog();
+    final var mojo = new WatchMojo();
+    mojo.directory = DIRECTORY.toString();
+    mojo.files = "*.pkl";
+    mojo.output = DIRECTORY.resolve("output").toString();
+    mojo.stateDirectory = "target/tests/pkl/watch-state/";
+    mojo.debounce = 50;
+    mojo.color = false;
+    mojo.setLog(log);
+    final AtomicReference<Exception> failure = new AtomicReference<>();
+    final var watch =
+        new Thread(
+            () -> {
+              try {
+                mojo.watch(1);
+              } catch (final Exception exception) {
+                failure.set(exception);
+              }
+            });
+    watch.start();
+    // the directory is watched before the first cycle writes the output
+    for (int i = 0; i < 100 && watch.isAlive() && !Files.exists(outputFile); i++) {
+      watch.join(100);
+    }
+    Files.writeString(module, WatchMojoTest.module("changed"));
+    watch.join(10_000);
+    Assertions.assertFalse(watch.isAlive());
+    Assertions.assertNull(failure.get(), "the watch does not fail");
+    Assertions.assertTrue(Files.readString(outputFile).contains("changed"));
+    Assertions.assertTrue(
+        log.captured().lines().anyMatch(line -> line.matches("\\[INFO\\] Watching .*")));
+    Assertions.assertTrue(
+        log.captured()
+            .lines()
+            .anyMatch(
+                line ->
+                    line.matches(
+                        "\\[INFO\\] Handled \\d+ changed files? in \\d+([\\.,]\\d+)?s")));
+  }
+
+  @Test
+  public void testOutputsOfFailingTestsDoNotStartAnotherCycle()
+      throws IOException, InterruptedException {
+    final var directory = Path.of("target/tests/pkl/watch-failing/");
+    final var module = directory.resolve("failing.pkl");
+    final var actual = directory.resolve("failing.pkl-actual.pcf");
+    Files.createDirectories(directory);
+    Files.writeString(module, WatchMojoTest.failingTest("bar"));
+    Files.writeString(
+        directory.resolve("failing.pkl-expected.pcf"),
+        """
+        examples {
+          ["value"] {
+            "baz"
+          }
+        }
+        """);
+    Files.deleteIfExists(actual);
+    final var log = new CapturingLog();
+    final var mojo = new WatchMojo();
+    mojo.directory = directory.toString();
+    mojo.testFiles = "*.pkl";
+    mojo.stateDirectory = "target/tests/pkl/watch-failing-state/";
+    mojo.debounce = 50;
+    mojo.color = false;
+    mojo.setLog(log);
+    final AtomicReference<Exception> failure = new AtomicReference<>();
+    final var watch =
+        new Thread(
+            () -> {
+              try {
+                mojo.watch(2);
+              } catch (final Exception exception) {
+                failure.set(exception);
+              }
+            });
+    watch.start();
+    for (int i = 0; i < 100 && watch.isAlive() && !Files.exists(actual); i++) {
+      watch.join(100);
+    }
+    // leaves time for events of the first run to arrive
+    watch.join(500);
+    Files.writeString(module, WatchMojoTest.failingTest("qux"));
+    // a second cycle, started by the actual output written by the first, would end the watch
+    watch.join(3_000);
+    Assertions.assertTrue(watch.isAlive(), "the watch waits for further changes");
+    watch.interrupt();
+    watch.join(10_000);
+    Assertions.assertNull(failure.get(), "the watch does not fail");
+    Assertions.assertTrue(Files.readString(actual).contains("qux"));
+    Assertions.assertEquals(
+        1,
+        log.captured()
+            .lines()
+            .filter(line -> line.matches("\\[INFO\\] Handled \\d+ changed files? in .*"))
+            .count());
+  }
+
+  private static String failingTest(final String value) {
+    return """
+        amends "pkl:test"
+
+        examples { ["value"] { "%s" } }
+        """
+        .formatted(value);
+  }
+
+  private static String module(final String value) {
+    return """
+        value = "%s"
+
+        output { files { ["value.json"] { value = module; renderer = new JsonRenderer {} } } }
+        """
+        .formatted(value);
+  }
+}
@@ -0,0 +1,53 @@
+package com.sitepark.maven.plugins.pkl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class WorkerPoolTest {
+
+  @Test
+  public void testScheduledTasksAreBoundedAndConsumedInOrder() throws MojoExecutionException {
+    final var items = IntStream.range(0, 200).boxed().toList();
+    // the largest item within reach of the first one is started before it completes
+    final var largest = 2 * 2 * WorkerPool.SCHEDULE_LOOKAHEAD - 1;
+    final var largestStarted = new CountDownLatch(1);
+    final var startedAhead = new AtomicBoolean();
+    final var unconsumed = new AtomicInteger();
+    final var maxUnconsumed = new AtomicInteger();
+    final List<Integer> results = new ArrayList<>();
+    try (final var workers = new WorkerPool<Object>(2, "test", Object::new, context -> {})) {
+      workers.forEachOrdered(
+          items,
+          Comparator.<Integer>reverseOrder(),
+          (context, item) -> {
+            maxUnconsumed.accumulateAndGet(unconsumed.incrementAndGet(), Math::max);
+            if (item == largest) {
+              largestStarted.countDown();
+            } else if (item == 0) {
+              try {
+                startedAhead.set(largestStarted.await(10, TimeUnit.SECONDS));
+              } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+              }
+            }
+            return item;
+          },
+          result -> {
+            results.add(result);
+            unconsumed.decrementAndGet();
+          });
+    }
+    Assertions.assertEquals(items, results);
+    Assertions.assertTrue(maxUnconsumed.get() <= 4, "at most twice the parallelism is pending");
+    Assertions.assertTrue(startedAhead.get(), "the largest items are started first");
+  }
+}